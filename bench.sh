@@ -0,0 +1,14 @@
+#!/bin/bash
+
+# usage: ./bench.sh [jmh options] [benchmark regexp]
+#   e.g. ./bench.sh -p threads=1,4 LexerBenchmark.parallel
+
+set -o errexit
+
+mvn --quiet -DskipTests=true test-compile 1>&2
+mvn --quiet dependency:build-classpath \
+  -Dmdep.includeScope=test \
+  -Dmdep.outputFile=target/test-classpath.txt 1>&2
+
+java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+  org.openjdk.jmh.Main "$@"
@@ -3,7 +3,9 @@
 run_jar() {
   local artifact=vm2gol_v2
   local jar_path=target/${artifact}-0.0.1-SNAPSHOT-jar-with-dependencies.jar
-  java -Dfile.encoding=UTF-8 -jar $jar_path "$@"
+  java -Dfile.encoding=UTF-8 \
+    --add-modules jdk.incubator.vector \
+    -jar $jar_path "$@"
 }
 
 compile() {
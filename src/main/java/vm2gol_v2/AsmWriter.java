@@ -0,0 +1,220 @@
+package vm2gol_v2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Appends assembly lines to a StringBuilder
+ * and writes them out in chunks of about FLUSH_SIZE chars.
+ * There is one method per kind of line, so that no format string is parsed
+ * and ints are appended without boxing.
+ *
+ * Labels are written as <code>prefix_id</code> or <code>prefix_id_idx</code>.
+ * Callers must call {@link #flush()} at the end.
+ */
+class AsmWriter {
+
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final StringBuilder sb = new StringBuilder(FLUSH_SIZE + 1024);
+    private char[] chunk = new char[FLUSH_SIZE + 1024];
+
+    AsmWriter(Writer out) {
+        this.out = out;
+    }
+
+    private void endLine() {
+        this.sb.append('\n');
+        if (FLUSH_SIZE <= this.sb.length()) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() {
+        int len = this.sb.length();
+        if (this.chunk.length < len) {
+            this.chunk = new char[len];
+        }
+        this.sb.getChars(0, len, this.chunk, 0);
+        this.sb.setLength(0);
+        try {
+            this.out.write(this.chunk, 0, len);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void flush() {
+        writeChunk();
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // --------------------------------
+
+    /**
+     * A line as it is, e.g. an empty line or a comment.
+     */
+    void line(String line) {
+        this.sb.append(line);
+        endLine();
+    }
+
+    private StringBuilder op(String op) {
+        return this.sb.append("  ").append(op);
+    }
+
+    private StringBuilder disp(int disp) {
+        return this.sb.append("[bp:").append(disp).append(']');
+    }
+
+    private StringBuilder labelName(String prefix, int id) {
+        return this.sb.append(prefix).append('_').append(id);
+    }
+
+    private void op0(String op) {
+        op(op);
+        endLine();
+    }
+
+    void push(String reg) {
+        op("push ").append(reg);
+        endLine();
+    }
+
+    void pop(String reg) {
+        op("pop ").append(reg);
+        endLine();
+    }
+
+    void mov(String dest, String src) {
+        op("mov ").append(dest).append(' ').append(src);
+        endLine();
+    }
+
+    void mov(String dest, int val) {
+        op("mov ").append(dest).append(' ').append(val);
+        endLine();
+    }
+
+    /**
+     * mov reg [bp:disp]
+     */
+    void movFromBp(String dest, int disp) {
+        op("mov ").append(dest).append(' ');
+        disp(disp);
+        endLine();
+    }
+
+    /**
+     * mov [bp:disp] reg
+     */
+    void movToBp(int disp, String src) {
+        op("mov ");
+        disp(disp).append(' ').append(src);
+        endLine();
+    }
+
+    void add(String dest, String src) {
+        op("add ").append(dest).append(' ').append(src);
+        endLine();
+    }
+
+    void add(String dest, int val) {
+        op("add ").append(dest).append(' ').append(val);
+        endLine();
+    }
+
+    void mul(String src) {
+        op("mul ").append(src);
+        endLine();
+    }
+
+    void cmp() {
+        op0("cmp");
+    }
+
+    void call(String fnName) {
+        op("call ").append(fnName);
+        endLine();
+    }
+
+    void ret() {
+        op0("ret");
+    }
+
+    void exit() {
+        op0("exit");
+    }
+
+    void je(String prefix, int id) {
+        op("je ");
+        labelName(prefix, id);
+        endLine();
+    }
+
+    void je(String prefix, int id, int idx) {
+        op("je ");
+        labelName(prefix, id).append('_').append(idx);
+        endLine();
+    }
+
+    void jmp(String prefix, int id) {
+        op("jmp ");
+        labelName(prefix, id);
+        endLine();
+    }
+
+    void label(String name) {
+        this.sb.append("label ").append(name);
+        endLine();
+    }
+
+    void label(String prefix, int id) {
+        this.sb.append("label ");
+        labelName(prefix, id);
+        endLine();
+    }
+
+    void label(String prefix, int id, int idx) {
+        this.sb.append("label ");
+        labelName(prefix, id).append('_').append(idx);
+        endLine();
+    }
+
+    /**
+     * _cmt with the spaces replaced by <code>~</code>.
+     * The comment used to be part of a format string,
+     * so one with a <code>%</code> still goes through String.format.
+     */
+    void vmComment(String comment) {
+        String line = "  _cmt " + StringUtils.replace(comment, " ", "~");
+        if (0 <= line.indexOf('%')) {
+            this.sb.append(String.format(line + "\n"));
+            if (FLUSH_SIZE <= this.sb.length()) {
+                writeChunk();
+            }
+            return;
+        }
+        line(line);
+    }
+
+    void vmDebug() {
+        op0("_debug");
+    }
+
+    /**
+     * <code>  # 条件 id_idx: cond</code>
+     */
+    void caseCondComment(int id, int idx, String cond) {
+        this.sb.append("  # 条件 ").append(id).append('_').append(idx).append(": ").append(cond);
+        endLine();
+    }
+
+}
@@ -1,23 +1,107 @@
 package vm2gol_v2;
 
-import org.apache.commons.lang3.StringUtils;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 
+import vm2gol_v2.util.BinAst;
 import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonReader;
+import vm2gol_v2.util.JsonTape;
 import vm2gol_v2.util.Utils;
-import vm2gol_v2.type.Names;
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.Ast.BinOp;
+import vm2gol_v2.type.Ast.Call;
+import vm2gol_v2.type.Ast.CallSet;
+import vm2gol_v2.type.Ast.Case;
+import vm2gol_v2.type.Ast.Expr;
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Funcall;
+import vm2gol_v2.type.Ast.IntLit;
+import vm2gol_v2.type.Ast.Op;
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.type.Ast.Return;
+import vm2gol_v2.type.Ast.Set;
+import vm2gol_v2.type.Ast.Stmt;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.Ast.VarRef;
+import vm2gol_v2.type.Ast.VmComment;
+import vm2gol_v2.type.Ast.VmDebug;
+import vm2gol_v2.type.Ast.When;
+import vm2gol_v2.type.Ast.While;
+import vm2gol_v2.type.FlatAst;
+import vm2gol_v2.type.NodeInterner;
 import vm2gol_v2.type.NodeItem;
 import vm2gol_v2.type.NodeList;
 
 import static vm2gol_v2.util.Utils.invalidType;
+import static vm2gol_v2.util.Utils.unexpected;
 import static vm2gol_v2.util.Utils.unsupported;
 
 public class CodeGenerator {
 
-    public static void run() {
-        new CodeGenerator().main();
+    /**
+     * Reserve the whole frame in the prologue
+     * and let locals with disjoint live ranges share a slot.
+     */
+    private boolean packFrame = false;
+
+    /** null unless packFrame */
+    private FrameLayout frameLayout = null;
+
+    private final AsmWriter asm;
+
+    public CodeGenerator() {
+        this(Utils.stdoutWriter());
+    }
+
+    CodeGenerator(Writer out) {
+        this.asm = new AsmWriter(out);
+    }
+
+    public static void run(Options opts) {
+        new CodeGenerator().main(opts);
+    }
+
+    /**
+     * Lines generated before an error are still written.
+     */
+    private void main(Options opts) {
+        try {
+            _main(opts);
+        } finally {
+            this.asm.flush();
+        }
     }
 
-    private void main() {
+    private void _main(Options opts) {
+        this.packFrame = opts.has("--pack-frame");
+
+        if (opts.has("--stream")) {
+            codegenStream(new JsonReader(Utils.stdinReader()));
+            return;
+        }
+
+        if (opts.has("--intern")) {
+            JsonReader r = new JsonReader(Utils.stdinReader());
+            r.next(); // START_LIST
+            codegen(Json.readList(r, new NodeInterner()));
+            return;
+        }
+        if (opts.has("--flat-ast")) {
+            codegen(FlatAst.fromJson(new JsonReader(Utils.stdinReader())).root());
+            return;
+        }
+        if (opts.has("--lazy")) {
+            codegen(JsonTape.parse(Utils.readStdinAllChars()));
+            return;
+        }
+        if (opts.has("--binary-ast")) {
+            codegen(BinAst.readStdin());
+            return;
+        }
+
         String src = Utils.readStdinAll();
 
         NodeList tree = Json.parse(src);
@@ -34,369 +118,428 @@ public class CodeGenerator {
         return CodeGenerator.labelId;
     }
 
-    private int fnArgDisp(Names fnArgNames, String fnArgName) {
-        int i = fnArgNames.indexOf(fnArgName);
-        return i + 2;
-    }
-
-    private int lvarDisp(Names lvarNames, String lvarName) {
-        int i = lvarNames.indexOf(lvarName);
-        return -(i + 1);
-    }
-
-    private void puts(String line, Object ... params) {
-        System.out.print(String.format(line + "\n", params));
+    private int disp(VarRef ref) {
+        if (this.frameLayout == null) {
+            return ref.disp();
+        }
+        return this.frameLayout.disp(ref);
     }
 
     // --------------------------------
 
     private void asmPrologue() {
-        puts("  push bp");
-        puts("  mov bp sp");
+        this.asm.push("bp");
+        this.asm.mov("bp", "sp");
     }
 
     private void asmEpilogue() {
-        puts("  mov sp bp");
-        puts("  pop bp");
+        this.asm.mov("sp", "bp");
+        this.asm.pop("bp");
     }
 
     // --------------------------------
 
     private void genExpr_add() {
-        puts("  pop reg_b");
-        puts("  pop reg_a");
+        this.asm.pop("reg_b");
+        this.asm.pop("reg_a");
 
-        puts("  add reg_a reg_b");
+        this.asm.add("reg_a", "reg_b");
     }
 
     private void genExpr_mult() {
-        puts("  pop reg_b");
-        puts("  pop reg_a");
+        this.asm.pop("reg_b");
+        this.asm.pop("reg_a");
 
-        puts("  mul reg_b");
+        this.asm.mul("reg_b");
     }
 
     private void genExpr_eq() {
         int labelId = CodeGenerator.nextLabelId();
-        String labelThen = String.format("then_%d", labelId);
-        String labelEnd = String.format("end_eq_%d", labelId);
+        String labelEnd = "end_eq";
 
-        puts("  pop reg_b");
-        puts("  pop reg_a");
+        this.asm.pop("reg_b");
+        this.asm.pop("reg_a");
 
-        puts("  cmp");
-        puts("  je %s", labelThen);
+        this.asm.cmp();
+        this.asm.je("then", labelId);
 
-        puts("  mov reg_a 0");
-        puts("  jmp %s", labelEnd);
+        this.asm.mov("reg_a", 0);
+        this.asm.jmp(labelEnd, labelId);
 
-        puts("label %s", labelThen);
-        puts("  mov reg_a 1");
+        this.asm.label("then", labelId);
+        this.asm.mov("reg_a", 1);
 
-        puts("label %s", labelEnd);
+        this.asm.label(labelEnd, labelId);
     }
 
     private void genExpr_neq() {
         int labelId = CodeGenerator.nextLabelId();
-        String labelThen = String.format("then_%d", labelId);
-        String labelEnd = String.format("end_neq_%d", labelId);
+        String labelEnd = "end_neq";
 
-        puts("  pop reg_b");
-        puts("  pop reg_a");
+        this.asm.pop("reg_b");
+        this.asm.pop("reg_a");
 
-        puts("  cmp");
-        puts("  je %s", labelThen);
+        this.asm.cmp();
+        this.asm.je("then", labelId);
 
-        puts("  mov reg_a 1");
-        puts("  jmp %s", labelEnd);
+        this.asm.mov("reg_a", 1);
+        this.asm.jmp(labelEnd, labelId);
 
-        puts("label %s", labelThen);
-        puts("  mov reg_a 0");
+        this.asm.label("then", labelId);
+        this.asm.mov("reg_a", 0);
 
-        puts("label %s", labelEnd);
+        this.asm.label(labelEnd, labelId);
     }
 
-    private void _genExpr_binary(Names fnArgNames, Names lvarNames, NodeItem expr) {
-        NodeItem operator = expr.getItems().first();
-        NodeList args = expr.getItems().rest();
+    private void genExpr_binary(Op op) {
+        switch (op) {
+        case ADD : genExpr_add() ; break;
+        case MULT: genExpr_mult(); break;
+        case EQ  : genExpr_eq()  ; break;
+        case NEQ : genExpr_neq() ; break;
+        }
+    }
+
+    private void genExpr_operand(Expr expr) {
+        switch (expr) {
+        case IntLit lit:
+            this.asm.mov("reg_a", lit.val());
+            break;
+        case VarRef ref:
+            if (! ref.isResolved()) {
+                throw unsupported(Ast.toNodeItem(expr));
+            }
+            this.asm.movFromBp("reg_a", disp(ref));
+            break;
+        case BinOp binOp:
+            throw invalidType(Ast.toNodeItem(expr));
+        }
+    }
 
-        NodeItem termL = args.get(0);
-        NodeItem termR = args.get(1);
+    /**
+     * A binary expression and how far its code has been generated.
+     */
+    private static class ExprTask {
+        static final int LHS_DONE = 0;
+        static final int RHS_DONE = 1;
 
-        genExpr(fnArgNames, lvarNames, termL);
-        puts("  push reg_a");
-        genExpr(fnArgNames, lvarNames, termR);
-        puts("  push reg_a");
+        final BinOp binOp;
+        int step = LHS_DONE;
 
-        if      (operator.strEq("+" )) { genExpr_add() ; }
-        else if (operator.strEq("*" )) { genExpr_mult(); }
-        else if (operator.strEq("==")) { genExpr_eq()  ; }
-        else if (operator.strEq("!=")) { genExpr_neq() ; }
-        else {
-            throw unsupported(operator);
+        ExprTask(BinOp binOp) {
+            this.binOp = binOp;
         }
     }
 
-    private void genExpr(Names fnArgNames, Names lvarNames, NodeItem expr) {
-        switch (expr.type) {
-        case INT:
-            puts("  mov reg_a %d", expr.getIntVal());
-            break;
-        case STR:
-            if (lvarNames.contains(expr.getStrVal())) {
-                String lvarName = expr.getStrVal();
-                int disp = lvarDisp(lvarNames, lvarName);
-                puts("  mov reg_a [bp:%d]", disp);
-            } else if (fnArgNames.contains(expr.getStrVal())) {
-                String fnArgName = expr.getStrVal();
-                int disp = fnArgDisp(fnArgNames, fnArgName);
-                puts("  mov reg_a [bp:%d]", disp);
-            } else {
-                throw unsupported(expr);
+    /**
+     * Post-order walk on an explicit stack
+     * so that the nesting depth is limited only by the heap.
+     * The output is the same as generating the operands recursively:
+     * lhs, push, rhs, push, operator.
+     */
+    private void genExpr(Expr expr) {
+        Deque<ExprTask> stack = new ArrayDeque<>();
+
+        while (true) {
+            // descend along the left operands
+            while (expr instanceof BinOp binOp) {
+                stack.push(new ExprTask(binOp));
+                expr = binOp.lhs();
+            }
+            genExpr_operand(expr);
+
+            while (true) {
+                if (stack.isEmpty()) {
+                    return;
+                }
+
+                ExprTask task = stack.peek();
+                this.asm.push("reg_a");
+
+                if (task.step == ExprTask.LHS_DONE) {
+                    task.step = ExprTask.RHS_DONE;
+                    expr = task.binOp.rhs();
+                    break;
+                }
+
+                genExpr_binary(task.binOp.op());
+                stack.pop();
             }
-            break;
-        case LIST:
-            _genExpr_binary(fnArgNames, lvarNames, expr);
-            break;
-        default:
-            throw invalidType(expr);
         }
     }
 
-    private void genFuncall(Names fnArgNames, Names lvarNames, NodeList funcall) {
-        String fnName = funcall.first().getStrVal();
-        NodeList fnArgs = funcall.rest();
+    private void genFuncall(Funcall funcall) {
+        String fnName = funcall.fnName();
+        List<Expr> fnArgs = funcall.args();
 
-        for (NodeItem fnArg : fnArgs.reverse().getList()) {
-            genExpr(fnArgNames, lvarNames, fnArg);
-            puts("  push reg_a");
+        for (Expr fnArg : fnArgs.reversed()) {
+            genExpr(fnArg);
+            this.asm.push("reg_a");
         }
 
         genVmComment("call  " + fnName);
-        puts("  call %s", fnName);
+        this.asm.call(fnName);
 
-        puts("  add sp %d", fnArgs.size());
+        this.asm.add("sp", fnArgs.size());
     }
 
-    private void genCall(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        NodeList funcall = stmt.get(1).getItems();
-        genFuncall(fnArgNames, lvarNames, funcall);
+    private void genCall(Call call) {
+        genFuncall(call.funcall());
     }
 
-    private void genCallSet(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        String lvarName = stmt.get(1).getStrVal();
-        NodeList funcall = stmt.get(2).getItems();
+    private void genCallSet(CallSet callSet) {
+        genFuncall(callSet.funcall());
 
-        genFuncall(fnArgNames, lvarNames, funcall);
-
-        int disp = lvarDisp(lvarNames, lvarName);
-        puts("  mov [bp:%d] reg_a", disp);
+        this.asm.movToBp(disp(callSet.dest()), "reg_a");
     }
 
-    private void _genSet(Names fnArgNames, Names lvarNames, NodeItem dest, NodeItem expr) {
-        genExpr(fnArgNames, lvarNames, expr);
+    private void _genSet(VarRef dest, Expr expr) {
+        genExpr(expr);
         String srcVal = "reg_a";
 
-        String destStr = dest.getStrVal();
-        if (lvarNames.contains(destStr)) {
-            int disp = lvarDisp(lvarNames, destStr);
-            puts("  mov [bp:%d] %s", disp, srcVal);
+        if (dest.isResolved()) {
+            this.asm.movToBp(disp(dest), srcVal);
         } else {
-            throw unsupported(destStr);
+            throw unsupported(dest.name());
         }
     }
 
-    private void genSet(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        NodeItem dest = stmt.get(1);
-        NodeItem expr = stmt.get(2);
-
-        _genSet(fnArgNames, lvarNames, dest, expr);
+    private void genSet(Set set) {
+        _genSet(set.dest(), set.expr());
     }
 
-    private void genReturn(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        NodeItem retval = stmt.get(1);
-        genExpr(new Names(), lvarNames, retval);
+    private void genReturn(Return ret) {
+        genExpr(ret.expr());
         asmEpilogue();
-        puts("  ret");
+        this.asm.ret();
     }
 
-    private void genWhile(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        NodeItem condExpr = stmt.get(1);
-        NodeList stmts = stmt.get(2).getItems();
-
+    private void genWhile(While wh) {
         int labelId = CodeGenerator.nextLabelId();
 
-        String labelBegin = String.format("while_%d", labelId);
-        String labelEnd = String.format("end_while_%d", labelId);
+        String labelBegin = "while";
+        String labelEnd = "end_while";
 
-        puts("");
+        this.asm.line("");
 
-        puts("label %s", labelBegin);
+        this.asm.label(labelBegin, labelId);
 
         // 条件の評価
-        genExpr(fnArgNames, lvarNames, condExpr);
-        puts("  mov reg_b 0");
-        puts("  cmp");
+        genExpr(wh.cond());
+        this.asm.mov("reg_b", 0);
+        this.asm.cmp();
 
-        puts("  je %s", labelEnd);
+        this.asm.je(labelEnd, labelId);
 
-        genStmts(fnArgNames, lvarNames, stmts);
+        genStmts(wh.stmts());
 
-        puts("  jmp %s", labelBegin);
+        this.asm.jmp(labelBegin, labelId);
 
-        puts("label %s", labelEnd);
-        puts("");
+        this.asm.label(labelEnd, labelId);
+        this.asm.line("");
     }
 
-    private void genCase(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        NodeList whenClauses = stmt.rest();
+    private void genCase(Case cs) {
         int labelId = CodeGenerator.nextLabelId();
 
         int whenIdx = -1;
 
-        String labelEnd = String.format("end_case_%d", labelId);
-        String labelEndWhenHead = String.format("end_when_%d", labelId);
+        String labelEnd = "end_case";
+        String labelEndWhenHead = "end_when";
 
-        for (NodeItem _whenClause : whenClauses.getList()) {
-            NodeList whenClause = _whenClause.getItems();
+        for (When whenClause : cs.whenClauses()) {
             whenIdx++;
 
-            NodeItem cond = whenClause.first();
-            NodeList stmts = whenClause.rest();
+            Expr cond = whenClause.cond();
 
-            puts(
-                    "  # 条件 %d_%d: %s",
-                    labelId, whenIdx, cond.inspect()
+            this.asm.caseCondComment(
+                    labelId, whenIdx, Ast.toNodeItem(cond).inspect()
                     );
 
-            genExpr(fnArgNames, lvarNames, cond);
-            puts("  mov reg_b 0");
-            puts("  cmp");
+            genExpr(cond);
+            this.asm.mov("reg_b", 0);
+            this.asm.cmp();
 
-            puts("  je %s_%d", labelEndWhenHead, whenIdx);
+            this.asm.je(labelEndWhenHead, labelId, whenIdx);
 
-            genStmts(fnArgNames, lvarNames, stmts);
+            genStmts(whenClause.stmts());
 
-            puts("  jmp %s", labelEnd);
+            this.asm.jmp(labelEnd, labelId);
 
-            puts("label %s_%d", labelEndWhenHead, whenIdx);
+            this.asm.label(labelEndWhenHead, labelId, whenIdx);
         }
 
-        puts("label %s", labelEnd);
+        this.asm.label(labelEnd, labelId);
     }
 
     private void genVmComment(String comment) {
-        puts("  _cmt " + StringUtils.replace(comment, " ", "~"));
+        this.asm.vmComment(comment);
     }
 
     private void genVmDebug() {
-        puts("  _debug");
-    }
-
-    private void genStmt(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        String stmtHead = stmt.first().getStrVal();
-
-        switch (stmtHead) {
-        case "set"     : genSet(    fnArgNames, lvarNames, stmt); break;
-        case "call"    : genCall(   fnArgNames, lvarNames, stmt); break;
-        case "call_set": genCallSet(fnArgNames, lvarNames, stmt); break;
-        case "return"  : genReturn( fnArgNames, lvarNames, stmt); break;
-        case "while"   : genWhile(  fnArgNames, lvarNames, stmt); break;
-        case "case"    : genCase(   fnArgNames, lvarNames, stmt); break;
-        case "_cmt"    : genVmComment(stmt.get(1).getStrVal())  ; break;
-        case "_debug"  : genVmDebug()                           ; break;
-        default:
-            throw unsupported(stmtHead);
+        this.asm.vmDebug();
+    }
+
+    private void genStmt(Stmt stmt) {
+        switch (stmt) {
+        case Set set        : genSet(set)                ; break;
+        case Call call      : genCall(call)              ; break;
+        case CallSet callSet: genCallSet(callSet)        ; break;
+        case Return ret     : genReturn(ret)             ; break;
+        case While wh       : genWhile(wh)               ; break;
+        case Case cs        : genCase(cs)                ; break;
+        case VmComment cmt  : genVmComment(cmt.comment()); break;
+        case VmDebug debug  : genVmDebug()               ; break;
+        case Var var:
+            // only at the top level of a function body
+            throw unsupported("var");
         }
     }
 
-    private void genStmts(Names fnArgNames, Names lvarNames, NodeList stmts) {
-        for (NodeItem _stmt : stmts.getList()) {
-            NodeList stmt = _stmt.getItems();
-            genStmt(fnArgNames, lvarNames, stmt);
+    private void genStmts(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            genStmt(stmt);
         }
     }
 
-    private void genVar(Names fnArgNames, Names lvarNames, NodeList stmt) {
-        puts("  add sp -1");
+    private void genVar(Var var) {
+        if (this.frameLayout == null) {
+            this.asm.add("sp", -1);
+        }
 
-        if (stmt.size() == 3) {
-            NodeItem dest = stmt.get(1);
-            NodeItem expr = stmt.get(2);
-            _genSet(fnArgNames, lvarNames, dest, expr);
+        if (var.expr() != null) {
+            _genSet(var.dest(), var.expr());
         }
     }
 
-    private void genFuncDef(NodeList funcDef) {
-        String fnName = funcDef.get(1).getStrVal();
-        Names fnArgNames = Names.fromNodeList(funcDef.get(2).getItems());
-        NodeList body = funcDef.get(3).getItems();
+    private void genFuncDef(Func func) {
+        func = Resolver.resolve(func);
+        String fnName = func.name();
 
-        puts("");
-        puts("label %s", fnName);
+        this.asm.line("");
+        this.asm.label(fnName);
         asmPrologue();
 
-        puts("");
-        puts("  # 関数の処理本体");
+        if (this.packFrame) {
+            this.frameLayout = FrameLayout.of(func);
+            if (this.frameLayout.size() > 0) {
+                this.asm.add("sp", -this.frameLayout.size());
+            }
+        }
 
-        Names lvarNames = new Names();
+        this.asm.line("");
+        this.asm.line("  # 関数の処理本体");
 
-        for (NodeItem stmt : body.getList()) {
-            NodeList _stmt = stmt.getItems();
-            if (_stmt.first().strEq("var")) {
-                lvarNames.add(_stmt.get(1).getStrVal());
-                genVar(fnArgNames, lvarNames, _stmt);
+        for (Stmt stmt : func.stmts()) {
+            if (stmt instanceof Var var) {
+                genVar(var);
             } else {
-                genStmt(fnArgNames, lvarNames, _stmt);
+                genStmt(stmt);
             }
         }
 
-        puts("");
+        this.asm.line("");
         asmEpilogue();
-        puts("  ret");
+        this.asm.ret();
     }
 
     private void genTopStmts(NodeList ast) {
         NodeList topStmts = ast.rest();
 
         for (NodeItem stmt : topStmts.getList()) {
-            NodeItem stmtHead = stmt.getItems().first();
-            if (stmtHead.strEq("func")) {
-                genFuncDef(stmt.getItems());
-            } else {
-                throw unsupported(stmtHead);
-            }
+            genTopStmt(stmt);
+        }
+    }
+
+    /**
+     * Converts one function at a time to the typed AST.
+     * A malformed function fails in the conversion,
+     * before any of its lines are written.
+     * Functions before it are written as before.
+     */
+    private void genTopStmt(NodeItem stmt) {
+        genFuncDef(Ast.toFunc(stmt));
+    }
+    /**
+     * Same output as genTopStmts(), but only one top-level statement
+     * is built at a time and dropped after its code is generated.
+     */
+    private void genTopStmtsStream(JsonReader r) {
+        // "top_stmts"
+        readItem(r, r.next());
+
+        JsonReader.Event ev;
+        while ((ev = r.next()) != JsonReader.Event.END_LIST) {
+            genTopStmt(readItem(r, ev));
+        }
+    }
+
+    private NodeItem readItem(JsonReader r, JsonReader.Event ev) {
+        switch (ev) {
+        case START_LIST: return NodeItem.of(Json.readList(r));
+        case INT       : return NodeItem.of(r.intVal());
+        case STR       : return NodeItem.of(r.strVal());
+        default:
+            throw unexpected(ev);
         }
     }
 
     private void genBuiltinSetVram() {
-        puts("");
-        puts("label set_vram");
+        this.asm.line("");
+        this.asm.label("set_vram");
         asmPrologue();
-        puts("  set_vram [bp:2] [bp:3]"); // vram_addr value
+        this.asm.line("  set_vram [bp:2] [bp:3]"); // vram_addr value
         asmEpilogue();
-        puts("  ret");
+        this.asm.ret();
     }
 
     private void genBuiltinGetVram() {
-        puts("");
-        puts("label set_vram");
+        this.asm.line("");
+        this.asm.label("set_vram");
         asmPrologue();
-        puts("  set_vram [bp:2] reg_a"); // vram_addr dest
+        this.asm.line("  set_vram [bp:2] reg_a"); // vram_addr dest
         asmEpilogue();
-        puts("  ret");
+        this.asm.ret();
     }
 
     void codegen(NodeList ast) {
-        puts("  call main");
-        puts("  exit");
+        this.asm.call("main");
+        this.asm.exit();
 
         genTopStmts(ast);
 
-        puts("#>builtins");
+        genBuiltins();
+        this.asm.flush();
+    }
+
+    void codegen(Program program) {
+        this.asm.call("main");
+        this.asm.exit();
+
+        for (Func func : program.funcs()) {
+            genFuncDef(func);
+        }
+
+        genBuiltins();
+        this.asm.flush();
+    }
+
+    void codegenStream(JsonReader r) {
+        this.asm.call("main");
+        this.asm.exit();
+
+        r.next(); // START_LIST
+        genTopStmtsStream(r);
+
+        genBuiltins();
+        this.asm.flush();
+    }
+
+    private void genBuiltins() {
+        this.asm.line("#>builtins");
         genBuiltinSetVram();
         genBuiltinGetVram();
-        puts("#<builtins");
+        this.asm.line("#<builtins");
     }
 
 }
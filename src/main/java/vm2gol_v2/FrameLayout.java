@@ -0,0 +1,216 @@
+package vm2gol_v2;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import vm2gol_v2.type.Ast.BinOp;
+import vm2gol_v2.type.Ast.Call;
+import vm2gol_v2.type.Ast.CallSet;
+import vm2gol_v2.type.Ast.Case;
+import vm2gol_v2.type.Ast.Expr;
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Funcall;
+import vm2gol_v2.type.Ast.IntLit;
+import vm2gol_v2.type.Ast.Return;
+import vm2gol_v2.type.Ast.Set;
+import vm2gol_v2.type.Ast.Stmt;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.Ast.VarRef;
+import vm2gol_v2.type.Ast.VmComment;
+import vm2gol_v2.type.Ast.VmDebug;
+import vm2gol_v2.type.Ast.When;
+import vm2gol_v2.type.Ast.While;
+
+/**
+ * Packs the locals of a resolved function into fewer stack slots.
+ *
+ * The live range of a local runs from its var statement
+ * to the last top-level statement that refers to it.
+ * A var can only appear at the top level of a function body
+ * and a loop never spans two top-level statements,
+ * so this is enough to find the locals that are never live at the same time.
+ * Those share a slot, chosen by a linear scan in declaration order.
+ *
+ * Reading a local before it is set gives whatever is in its slot,
+ * which may now be the value of an earlier local instead of garbage.
+ */
+public class FrameLayout {
+
+    /** new displacement of each local, indexed by -(old disp) - 1 */
+    private final int[] disps;
+    private final int size;
+
+    private FrameLayout(int[] disps, int size) {
+        this.disps = disps;
+        this.size = size;
+    }
+
+    /**
+     * @param func resolved by Resolver
+     */
+    public static FrameLayout of(Func func) {
+        List<Stmt> stmts = func.stmts();
+
+        int numLvars = 0;
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof Var) {
+                numLvars++;
+            }
+        }
+
+        int[] start = new int[numLvars];
+        int[] end = new int[numLvars];
+        Arrays.fill(start, -1);
+
+        for (int i = 0; i < stmts.size(); i++) {
+            if (stmts.get(i) instanceof Var var) {
+                int lvarIdx = -var.dest().disp() - 1;
+                if (start[lvarIdx] < 0) {
+                    start[lvarIdx] = i;
+                }
+            }
+
+            final int stmtIdx = i;
+            forEachRef(stmts.get(i), (VarRef ref) -> {
+                if (isLvar(ref)) {
+                    int lvarIdx = -ref.disp() - 1;
+                    end[lvarIdx] = Math.max(end[lvarIdx], stmtIdx);
+                }
+            });
+        }
+
+        int[] disps = new int[numLvars];
+        int size = 0;
+
+        // (end, slot) of the slots in use, the one freed first on top
+        PriorityQueue<int[]> active = new PriorityQueue<>((a, b) -> Integer.compare(a[0], b[0]));
+        PriorityQueue<Integer> freeSlots = new PriorityQueue<>();
+
+        // a duplicated var keeps the slot of its first declaration,
+        // so only the first ones have a start and they come in slot order
+        for (int lvarIdx = 0; lvarIdx < numLvars; lvarIdx++) {
+            if (start[lvarIdx] < 0) {
+                continue;
+            }
+
+            while (! active.isEmpty() && active.peek()[0] < start[lvarIdx]) {
+                freeSlots.add(active.poll()[1]);
+            }
+
+            int slot;
+            if (freeSlots.isEmpty()) {
+                slot = size;
+                size++;
+            } else {
+                slot = freeSlots.poll();
+            }
+
+            disps[lvarIdx] = -(slot + 1);
+            active.add(new int[] { end[lvarIdx], slot });
+        }
+
+        return new FrameLayout(disps, size);
+    }
+
+    private static boolean isLvar(VarRef ref) {
+        return ref.isResolved() && ref.disp() < 0;
+    }
+
+    /**
+     * Number of slots for the locals.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Displacement after packing. Arguments and unresolved names are unchanged.
+     */
+    public int disp(VarRef ref) {
+        if (isLvar(ref)) {
+            return this.disps[-ref.disp() - 1];
+        }
+        return ref.disp();
+    }
+
+    // --------------------------------
+
+    private interface RefVisitor {
+        void visit(VarRef ref);
+    }
+
+    private static void forEachRef(Stmt stmt, RefVisitor visitor) {
+        switch (stmt) {
+        case Var var:
+            visitor.visit(var.dest());
+            if (var.expr() != null) {
+                forEachRef(var.expr(), visitor);
+            }
+            break;
+        case Set set:
+            visitor.visit(set.dest());
+            forEachRef(set.expr(), visitor);
+            break;
+        case Call call:
+            forEachRef(call.funcall(), visitor);
+            break;
+        case CallSet callSet:
+            visitor.visit(callSet.dest());
+            forEachRef(callSet.funcall(), visitor);
+            break;
+        case Return ret:
+            forEachRef(ret.expr(), visitor);
+            break;
+        case While wh:
+            forEachRef(wh.cond(), visitor);
+            for (Stmt child : wh.stmts()) {
+                forEachRef(child, visitor);
+            }
+            break;
+        case Case cs:
+            for (When whenClause : cs.whenClauses()) {
+                forEachRef(whenClause.cond(), visitor);
+                for (Stmt child : whenClause.stmts()) {
+                    forEachRef(child, visitor);
+                }
+            }
+            break;
+        case VmComment cmt:
+            break;
+        case VmDebug debug:
+            break;
+        }
+    }
+
+    private static void forEachRef(Funcall funcall, RefVisitor visitor) {
+        for (Expr arg : funcall.args()) {
+            forEachRef(arg, visitor);
+        }
+    }
+
+    /**
+     * Walks on an explicit stack; the order of the visits does not matter here.
+     */
+    private static void forEachRef(Expr expr, RefVisitor visitor) {
+        Deque<Expr> stack = new ArrayDeque<>();
+        stack.push(expr);
+
+        while (! stack.isEmpty()) {
+            switch (stack.pop()) {
+            case IntLit lit:
+                break;
+            case VarRef ref:
+                visitor.visit(ref);
+                break;
+            case BinOp binOp:
+                stack.push(binOp.rhs());
+                stack.push(binOp.lhs());
+                break;
+            }
+        }
+    }
+
+}
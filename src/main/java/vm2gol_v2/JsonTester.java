@@ -1,6 +1,10 @@
 package vm2gol_v2;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonWriter;
 import vm2gol_v2.util.Utils;
 import vm2gol_v2.type.NodeList;
 
@@ -15,6 +19,13 @@ class JsonTester {
 
         NodeList list = Json.parse(json);
 
-        System.out.println(Json.toJson(list));
+        Writer out = Utils.stdoutWriter();
+        new JsonWriter(out).list(list);
+        try {
+            out.write(System.lineSeparator());
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -1,103 +1,399 @@
 package vm2gol_v2;
 
-import vm2gol_v2.util.Regex;
+import vm2gol_v2.util.CharScanner;
+import vm2gol_v2.util.TokenMatcher;
 import vm2gol_v2.util.Utils;
 import vm2gol_v2.type.Token;
+import vm2gol_v2.type.TokenBuffer;
 import vm2gol_v2.type.Token.Kind;
 
 import static vm2gol_v2.util.Utils.unexpected;
 import static vm2gol_v2.util.Utils.putskv_e;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 class Lexer {
 
-    private final Set<String> KEYWORD_SET = Set.of(
+    private static final String[] KEYWORDS = {
             "func", "set", "var", "call_set", "call", "return", "case", "when", "while",
             "_cmt", "_debug"
-    );
+    };
 
-    public static void run() {
-        new Lexer().main(); 
+    private static final int BUF_SIZE = 8192;
+    /** lexed chars kept in front of the stream buffer for the error context */
+    private static final int KEEP_SIZE = 256;
+
+    private final CharScanner scanner;
+
+    Lexer() {
+        this(CharScanner.get());
+    }
+
+    Lexer(CharScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    public static void run(Options opts) {
+        new Lexer().main(opts); 
+    }
+
+    private void main(Options opts) {
+        if (opts.has("--parallel")) {
+            printTokens(lexParallel(Utils.readStdinAll()));
+            return;
+        }
+
+        try (Reader in = Utils.stdinReader()) {
+            if (opts.has("--binary-tokens")) {
+                printTokensBinary(in);
+            } else {
+                printTokens(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private void main() {
-        String src = Utils.readStdinAll();
+    private void printTokens(Reader in) throws IOException {
+        Writer out = Utils.stdoutWriter();
 
-        List<Token> tokens = lex(src);
+        lex(in, (lineNo, kind, cs, start, end) ->
+                Token.writeLine(out, lineNo, kind, cs, start, end - start)
+        );
 
-        printTokens(tokens);
+        out.flush();
+    }
+
+    private void printTokens(List<Token> tokens) {
+        Writer out = Utils.stdoutWriter();
+
+        try {
+            for (Token t : tokens) {
+                out.write(t.toLine());
+                out.write(Utils.LF);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void printTokensBinary(Reader in) throws IOException {
+        OutputStream out = new BufferedOutputStream(System.out);
+
+        lex(in, (lineNo, kind, cs, start, end) ->
+                Token.writeBinary(out, lineNo, kind, cs, start, end - start)
+        );
+
+        out.flush();
     }
 
     // --------------------------------
 
-    private List<Token> lex(String src) {
+    interface TokenSink {
+        void add(int lineNo, Kind kind, char[] cs, int start, int end) throws IOException;
+    }
+
+    List<Token> lex(String src) {
+        char[] cs = src.toCharArray();
+        return lexToList(cs, 0, cs.length, 1);
+    }
+
+    /**
+     * Lexes into a TokenBuffer whose token strings point into the source.
+     */
+    TokenBuffer lexToBuffer(String src) {
+        char[] cs = src.toCharArray();
+        TokenBuffer tokens = new TokenBuffer(cs);
+
+        try {
+            lex(cs, 0, cs.length, 1, (lineNo, kind, buf, start, end) ->
+                    tokens.add(lineNo, kind, start, end)
+            );
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return tokens;
+    }
+
+    private List<Token> lexToList(char[] cs, int start, int end, int lineNo) {
         List<Token> tokens = new ArrayList<>();
-        int pos = 0;
+
+        try {
+            lex(cs, start, end, lineNo, (_lineNo, kind, buf, _start, _end) ->
+                    tokens.add(new Token(_lineNo, kind, new String(buf, _start, _end - _start)))
+            );
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return tokens;
+    }
+
+    List<Token> lexParallel(String src) {
+        return lexParallel(src, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parallel mode: splits the source into line-aligned chunks
+     * and lexes them on the pool.
+     * No token spans a newline, so each chunk can be lexed on its own
+     * once its first lineNo is known.
+     * The newlines of each chunk are counted in parallel first,
+     * then the chunks are lexed starting from the summed line offsets.
+     */
+    List<Token> lexParallel(String src, ForkJoinPool pool) {
+        char[] cs = src.toCharArray();
+        int[] bounds = chunkBounds(cs, pool.getParallelism() * 4);
+        int numChunks = bounds.length - 1;
+
+        List<ForkJoinTask<Integer>> countTasks = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            int start = bounds[i];
+            int end = bounds[i + 1];
+            countTasks.add(pool.submit(() -> this.scanner.countLf(cs, start, end)));
+        }
+
+        List<ForkJoinTask<List<Token>>> lexTasks = new ArrayList<>(numChunks);
         int lineNo = 1;
+        for (int i = 0; i < numChunks; i++) {
+            int start = bounds[i];
+            int end = bounds[i + 1];
+            int firstLineNo = lineNo;
+            lexTasks.add(pool.submit(() -> lexToList(cs, start, end, firstLineNo)));
 
-        Regex re = new Regex();
+            lineNo += countTasks.get(i).join();
+        }
 
-        while (pos < src.length()) {
-            String rest = src.substring(pos);
+        List<Token> tokens = new ArrayList<>();
+        for (ForkJoinTask<List<Token>> task : lexTasks) {
+            tokens.addAll(task.join());
+        }
+        return tokens;
+    }
 
-            if (re.match("^( +)", rest)) {
-                String s = re.group(1);
-                pos += s.length();
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
 
-            } else if (re.match("^\n", rest)) {
-                pos += 1;
-                lineNo++;
+    /**
+     * @return chunk boundaries; each chunk but the last ends right after a newline
+     */
+    private static int[] chunkBounds(char[] cs, int maxChunks) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, cs.length / maxChunks + 1);
 
-            } else if (re.match("^(//.*)", rest)) {
-                String s = re.group(1);
-                pos += s.length();
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int pos = 0;
+        while (pos < cs.length) {
+            int next = Math.min(pos + chunkSize, cs.length);
+            while (next < cs.length && cs[next - 1] != '\n') {
+                next++;
+            }
+            bounds.add(next);
+            pos = next;
+        }
 
-            } else if (re.match("^\"(.*)\"", rest)) {
-                String s = re.group(1);
-                tokens.add(new Token(lineNo, Kind.STR, s));
-                pos += s.length() + 2;
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
 
-            } else if (re.match("^(-?[0-9]+)", rest)) {
-                String s = re.group(1);
-                tokens.add(new Token(lineNo, Kind.INT, s));
-                pos += s.length();
+    /**
+     * Incremental mode: the edit replaced <code>oldText[editStart, editOldEnd)</code>
+     * with <code>newText[editStart, editNewEnd)</code>.
+     * Only the lines touched by the edit are lexed again;
+     * tokens on the following lines are kept with their lineNo shifted.
+     * No token spans a newline, so the result is the same as lexing newText.
+     *
+     * @param prevTokens tokens of oldText
+     */
+    List<Token> relex(
+            List<Token> prevTokens, String oldText, String newText,
+            int editStart, int editOldEnd, int editNewEnd
+    ) {
+        int firstLineNo = 1 + countLf(newText, 0, editStart);
+        int oldLastLineNo = firstLineNo + countLf(oldText, editStart, editOldEnd);
+        int newLastLineNo = firstLineNo + countLf(newText, editStart, editNewEnd);
 
-            } else if (re.match("^(==|!=|[(){}=;+*,])", rest)) {
-                String s = re.group(1);
-                tokens.add(new Token(lineNo, Kind.SYM, s));
-                pos += s.length();
+        int regionStart = newText.lastIndexOf('\n', editStart - 1) + 1;
+        int regionEnd = newText.indexOf('\n', editNewEnd);
+        if (regionEnd < 0) {
+            regionEnd = newText.length();
+        }
 
-            } else if (re.match("^([a-z_][a-z0-9_]*)", rest)) {
-                String s = re.group(1);
-                Kind kind = isKeyword(s) ? Kind.KW : Kind.IDENT;
-                tokens.add(new Token(lineNo, kind, s));
-                pos += s.length();
+        int headEnd = indexOfLine(prevTokens, firstLineNo);
+        int tailStart = indexOfLine(prevTokens, oldLastLineNo + 1);
+        int delta = newLastLineNo - oldLastLineNo;
 
+        List<Token> tokens = new ArrayList<>(prevTokens.size());
+        tokens.addAll(prevTokens.subList(0, headEnd));
+
+        char[] cs = new char[regionEnd - regionStart];
+        newText.getChars(regionStart, regionEnd, cs, 0);
+        tokens.addAll(lexToList(cs, 0, cs.length, firstLineNo));
+
+        for (Token t : prevTokens.subList(tailStart, prevTokens.size())) {
+            tokens.add(delta == 0 ? t : t.withLineNo(t.getLineNo() + delta));
+        }
+
+        return tokens;
+    }
+
+    private static int countLf(String s, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == '\n') {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return index of the first token on or after the line
+     */
+    private static int indexOfLine(List<Token> tokens, int lineNo) {
+        int lo = 0;
+        int hi = tokens.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens.get(mid).getLineNo() < lineNo) {
+                lo = mid + 1;
             } else {
-                String pre = src.substring(0, pos);
-                String post = src.substring(pos);
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Streaming mode: reads through a fixed-size buffer and passes each token to the sink
+     * as soon as its line has been read.
+     * No token spans a newline, so everything up to the last newline in the buffer
+     * can be lexed before reading on.
+     * The buffer only grows when a single line does not fit in it.
+     * The last KEEP_SIZE lexed chars stay in front of the buffer,
+     * so an error near the start of a refill still shows what came before it.
+     */
+    void lex(Reader in, TokenSink sink) throws IOException {
+        char[] buf = new char[BUF_SIZE];
+        int start = 0;
+        int len = 0;
+        int lineNo = 1;
+
+        while (true) {
+            int n = in.read(buf, len, buf.length - len);
+            if (n < 0) {
+                break;
+            }
+            len += n;
+
+            int linesEnd = lastIndexOfLf(buf, start, len) + 1;
+            if (linesEnd == 0) {
+                if (len == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                continue;
+            }
+
+            lineNo = lex(buf, start, linesEnd, lineNo, sink);
+
+            start = Math.min(linesEnd, KEEP_SIZE);
+            System.arraycopy(buf, linesEnd - start, buf, 0, len - linesEnd + start);
+            len -= linesEnd - start;
+        }
+
+        lex(buf, start, len, lineNo, sink);
+    }
+
+    private static int lastIndexOfLf(char[] cs, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (cs[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the source once from left to right.
+     * Runs of spaces and comments are skipped by the scanner;
+     * everything else is recognized by the TokenMatcher DFA.
+     */
+    private int lex(char[] cs, int pos, int end, int lineNo, TokenSink sink) throws IOException {
+        while (pos < end) {
+            char c = cs[pos];
+
+            if (c == ' ') {
+                pos = this.scanner.skipSpaces(cs, pos, end);
+                continue;
+            } else if (c == '\n') {
+                pos += 1;
+                lineNo++;
+                continue;
+            } else if (c == '/' && pos + 1 < end && cs[pos + 1] == '/') {
+                pos = this.scanner.lineEnd(cs, pos, end);
+                continue;
+            }
+
+            long m = TokenMatcher.matchLex(cs, pos, end);
+            int tail = TokenMatcher.end(m);
+
+            switch (TokenMatcher.cls(m)) {
+            case TokenMatcher.STR:
+                sink.add(lineNo, Kind.STR, cs, pos + 1, tail - 1);
+                break;
+            case TokenMatcher.INT:
+                sink.add(lineNo, Kind.INT, cs, pos, tail);
+                break;
+            case TokenMatcher.SYM:
+                sink.add(lineNo, Kind.SYM, cs, pos, tail);
+                break;
+            case TokenMatcher.IDENT:
+                Kind kind = isKeyword(cs, pos, tail) ? Kind.KW : Kind.IDENT;
+                sink.add(lineNo, kind, cs, pos, tail);
+                break;
+            default:
+                String pre = new String(cs, 0, pos);
+                String post = new String(cs, pos, end - pos);
 
                 putskv_e("pre", Utils.escape(pre));
                 putskv_e("post", Utils.escape(post));
 
                 throw unexpected("Unexpected pattern");
             }
+            pos = tail;
         }
 
-        return tokens;
+        return lineNo;
     }
 
-    private boolean isKeyword(String str) {
-        return KEYWORD_SET.contains(str);
+    private static boolean isKeyword(char[] cs, int start, int end) {
+        for (String kw : KEYWORDS) {
+            if (regionEq(kw, cs, start, end)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void printTokens(List<Token> tokens) {
-        for (Token t : tokens) {
-            System.out.print(t.toLine() + Utils.LF);
+    private static boolean regionEq(String s, char[] cs, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != cs[start + i]) {
+                return false;
+            }
         }
+        return true;
     }
 
 }
@@ -13,12 +13,13 @@ public class Main {
 
     void _main(String[] args) {
         String cmd = args[0];
+        Options opts = Options.parse(args, 1);
 
         switch (cmd) {
-        case "lex"      : Lexer.run()        ; break;
-        case "parse"    : Parser.run()       ; break;
-        case "codegen"  : CodeGenerator.run(); break;
-        case "test_json": JsonTester.run()   ; break;
+        case "lex"      : Lexer.run(opts)        ; break;
+        case "parse"    : Parser.run(opts)       ; break;
+        case "codegen"  : CodeGenerator.run(opts); break;
+        case "test_json": JsonTester.run()       ; break;
         default:
             throw new IllegalArgumentException(cmd);
         }
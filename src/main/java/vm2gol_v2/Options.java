@@ -0,0 +1,31 @@
+package vm2gol_v2;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Command line flags (<code>--name</code>) following the command name.
+ */
+class Options {
+
+    private final Set<String> flags = new HashSet<>();
+
+    static Options parse(String[] args, int from) {
+        Options opts = new Options();
+
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            if (! arg.startsWith("--")) {
+                throw new IllegalArgumentException(arg);
+            }
+            opts.flags.add(arg);
+        }
+
+        return opts;
+    }
+
+    boolean has(String flag) {
+        return this.flags.contains(flag);
+    }
+
+}
@@ -1,493 +1,819 @@
 package vm2gol_v2;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import org.apache.commons.lang3.StringUtils;
-
-import vm2gol_v2.util.Json;
+import vm2gol_v2.util.BinAst;
+import vm2gol_v2.util.JsonWriter;
 import vm2gol_v2.util.Utils;
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.Ast.BinOp;
+import vm2gol_v2.type.Ast.Call;
+import vm2gol_v2.type.Ast.CallSet;
+import vm2gol_v2.type.Ast.Case;
+import vm2gol_v2.type.Ast.Expr;
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Funcall;
+import vm2gol_v2.type.Ast.IntLit;
+import vm2gol_v2.type.Ast.Op;
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.type.Ast.Return;
+import vm2gol_v2.type.Ast.Set;
+import vm2gol_v2.type.Ast.Stmt;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.Ast.VarRef;
+import vm2gol_v2.type.Ast.VmComment;
+import vm2gol_v2.type.Ast.VmDebug;
+import vm2gol_v2.type.Ast.When;
+import vm2gol_v2.type.Ast.While;
+import vm2gol_v2.type.FlatAst;
+import vm2gol_v2.type.NodeInterner;
 import vm2gol_v2.type.NodeItem;
 import vm2gol_v2.type.NodeList;
 import vm2gol_v2.type.Token;
+import vm2gol_v2.type.TokenBuffer;
+import vm2gol_v2.type.TokenCode;
 
 import static vm2gol_v2.util.Utils.notYetImpl;
 import static vm2gol_v2.util.Utils.invalidKind;
 import static vm2gol_v2.util.Utils.unexpected;
+import static vm2gol_v2.util.Utils.unsupported;
 
 public class Parser {
 
-    public static void run() {
-        new Parser().main();
+    public static void run(Options opts) {
+        new Parser().main(opts);
     }
 
-    private void main() {
-        String src = Utils.readStdinAll();
-        this.tokens = toTokens(src);
+    private void main(Options opts) {
+        // --parallel only splits parse(), which the other trees do not use
+        for (String opt : List.of("--stream", "--flat-ast", "--intern")) {
+            if (opts.has("--parallel") && opts.has(opt)) {
+                throw unsupported("--parallel with " + opt);
+            }
+        }
+
+        if (opts.has("--stream")) {
+            if (opts.has("--binary-tokens")) {
+                this.tokens = TokenBuffer.streamBinary(new BufferedInputStream(System.in));
+            } else {
+                this.tokens = TokenBuffer.streamLines(Utils.stdinReader());
+            }
+            parseStream(opts);
+            return;
+        }
+
+        if (opts.has("--binary-tokens")) {
+            this.tokens = readTokensBinary(new BufferedInputStream(System.in));
+        } else {
+            String src = Utils.readStdinAll();
+            this.tokens = toTokens(src);
+        }
+
+        if (opts.has("--flat-ast")) {
+            printTree(parseFlat().item(0), opts);
+        } else if (opts.has("--intern")) {
+            printTree(parseInterned(), opts);
+        } else {
+            Program program;
+            try {
+                if (opts.has("--parallel")) {
+                    program = parseParallel(ForkJoinPool.commonPool());
+                } else {
+                    program = parse();
+                }
+            } catch (Exception e) {
+                // dumpState(); // TODO
+                throw e;
+            }
+            printProgram(program, opts);
+        }
+    }
 
-        NodeItem tree;
+    private void printTree(NodeItem tree, Options opts) {
+        if (opts.has("--binary-ast")) {
+            printTreeBinary(tree);
+        } else {
+            printTree(tree);
+        }
+    }
+
+    /**
+     * Converts one function at a time to the NodeList form.
+     */
+    private void printProgram(Program program, Options opts) {
+        if (opts.has("--binary-ast")) {
+            printTreeBinary(NodeItem.of(Ast.toNodeList(program)));
+            return;
+        }
+
+        Writer out = Utils.stdoutWriter();
+        JsonWriter jw = new JsonWriter(out);
+        jw.startList();
+        jw.str("top_stmts");
+        for (Func func : program.funcs()) {
+            jw.list(Ast.toNodeList(func));
+        }
+        jw.endList();
         try {
-            tree = parse();
-        } catch (Exception e) {
-            // dumpState(); // TODO
-            throw e;
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        System.out.print(toJson(tree));
+    /**
+     * Writes each function as soon as it is parsed
+     * and releases its tokens, so that only one function is held at a time.
+     * The output is the same as printProgram() without --binary-ast.
+     */
+    private void parseStream(Options opts) {
+        if (opts.has("--binary-ast")) {
+            throw unsupported("--binary-ast with --stream");
+        }
+
+        Writer out = Utils.stdoutWriter();
+        JsonWriter jw = new JsonWriter(out);
+        jw.startList();
+        jw.str("top_stmts");
+        while (! isEnd()) {
+            jw.list(Ast.toNodeList(parseTopStmt()));
+            this.tokens.discardBefore(this.pos);
+            flush(out);
+        }
+        jw.endList();
+        flush(out);
+    }
+
+    private void flush(Writer out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void printTree(NodeItem tree) {
+        Writer out = Utils.stdoutWriter();
+        new JsonWriter(out).list(tree.getItems());
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void printTreeBinary(NodeItem tree) {
+        OutputStream out = new BufferedOutputStream(System.out);
+        try {
+            BinAst.write(out, tree.getItems());
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     // --------------------------------
 
     private int pos = 0;
-    private List<Token> tokens;
+    private TokenBuffer tokens;
 
-    private List<Token> toTokens(String src) {
-        String [] lines = StringUtils.split(src, Utils.LF);
-
-        return Arrays.stream(lines)
-                .map(Token::fromLine)
-                .collect(Collectors.toList());
+    private TokenBuffer toTokens(String src) {
+        return TokenBuffer.fromLines(src.toCharArray());
     }
 
-    private String toJson(NodeItem tree) {
-        return Json.toJson(tree.getItems());
+    private TokenBuffer readTokensBinary(InputStream in) {
+        try {
+            return TokenBuffer.readBinary(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     // --------------------------------
 
     private boolean isEnd() {
-        return this.tokens.size() <= this.pos;
+        return ! this.tokens.has(this.pos);
     }
 
-    private Token peek(int n) {
-        return this.tokens.get(this.pos + n);
+    private Token.Kind peekKind() {
+        return this.tokens.kind(this.pos);
     }
 
-    private Token peek() {
-        return peek(0);
+    private int peekCode() {
+        return this.tokens.code(this.pos);
     }
 
-    private Token peekAndIncrement() {
-        Token t = peek();
+    private boolean peekIs(int code) {
+        return peekCode() == code;
+    }
+
+    /**
+     * @return index of the current token
+     */
+    private int peekAndIncrement() {
+        int i = this.pos;
         this.pos++;
-        return t;
+        return i;
+    }
+
+    private String strAt(int i) {
+        return this.tokens.str(i);
     }
 
-    private void assertValue(Token t, Token.Kind kind, String expected) {
-        if (t.kind != kind) {
-            throw invalidKind(t);
+    /**
+     * Same as Token#strEq
+     */
+    private boolean symEq(int i, String str) {
+        if (this.tokens.kind(i) != Token.Kind.SYM) {
+            throw invalidKind(this.tokens.get(i));
+        }
+        return this.tokens.strEq(i, str);
+    }
+
+    private void assertValue(int pos, Token.Kind kind, String expected) {
+        if (this.tokens.kind(pos) != kind) {
+            throw invalidKind(this.tokens.get(pos));
         }
 
-        if (Utils.strEq(t.getStr(), expected)) {
+        if (this.tokens.strEq(pos, expected)) {
             // OK
         } else {
             String msg = String.format(
                     "Assertion failed: exp(%s) act(%s)",
                     expected,
-                    t
+                    this.tokens.get(pos)
                     );
             throw new RuntimeException(msg);
         }
     }
 
-    private void assertValue_sym(int pos, String exp) {
-        Token t = this.tokens.get(pos);
-
-        assertValue(t, Token.Kind.SYM, exp);
-    }
-
-    private void assertValue_kw(int pos, String exp) {
-        Token t = this.tokens.get(pos);
-
-        assertValue(t, Token.Kind.KW, exp);
-    }
-
-    private void consumeKw(String s) {
-        assertValue_kw(this.pos, s);
-        this.pos++;
-    }
-
-    private void consumeSym(String s) {
-        assertValue_sym(this.pos, s);
+    /**
+     * @param code keyword or symbol (see TokenCode)
+     */
+    private void consume(int code) {
+        if (peekCode() != code) {
+            // throws
+            assertValue(this.pos, TokenCode.kind(code), TokenCode.str(code));
+        }
         this.pos++;
     }
 
     // --------------------------------
 
-    private NodeList nodelist() {
-        return new NodeList();
-    }
-
-    private NodeItem parseArg() {
-        Token t = peek();
+    private Expr parseArg() {
+        int t = this.pos;
 
-        switch (t.kind) {
+        switch (peekKind()) {
         case IDENT:
             pos++;
-            return NodeItem.of(t.getStr());
+            return new VarRef(strAt(t));
 
         case INT:
             pos++;
-            return NodeItem.of(t.getIntVal());
+            return new IntLit(this.tokens.intVal(t));
 
         default:
-            throw invalidKind(t);
+            throw invalidKind(this.tokens.get(t));
         }
     }
 
-    private NodeList parseArgs() {
-        NodeList args = nodelist();
+    private List<Expr> parseArgs() {
+        List<Expr> args = new ArrayList<>();
 
-        if (peek().is(Token.Kind.SYM, ")")) {
+        if (peekIs(TokenCode.PAREN_R)) {
             return args;
         }
 
         args.add(parseArg());
 
-        while (! peek().is(Token.Kind.SYM, ")")) {
-            consumeSym(",");
+        while (! peekIs(TokenCode.PAREN_R)) {
+            consume(TokenCode.COMMA);
             args.add(parseArg());
         }
 
         return args;
     }
 
-    private NodeList parseFunc() {
-        consumeKw("func");
+    private Func parseFunc() {
+        consume(TokenCode.FUNC);
 
-        Token t = peekAndIncrement();
-        String fnName = t.getStr();
+        int t = peekAndIncrement();
+        String fnName = strAt(t);
 
-        consumeSym("(");
-        NodeList args = parseArgs();
-        consumeSym(")");
+        consume(TokenCode.PAREN_L);
+        List<Expr> params = parseArgs();
+        consume(TokenCode.PAREN_R);
 
-        consumeSym("{");
+        consume(TokenCode.BRACE_L);
 
-        NodeList stmts = new NodeList();
-        while (! peek().is(Token.Kind.SYM, "}")) {
-            if (peek().is(Token.Kind.KW, "var")) {
+        List<Stmt> stmts = new ArrayList<>();
+        while (! peekIs(TokenCode.BRACE_R)) {
+            if (peekIs(TokenCode.VAR)) {
                 stmts.add(parseVar());
             } else {
                 stmts.add(parseStmt());
             }
         }
-        consumeSym("}");
+        consume(TokenCode.BRACE_R);
 
-        return nodelist()
-                .add("func")
-                .add(fnName)
-                .add(args)
-                .add(stmts)
-                ;
+        return new Func(fnName, params, stmts);
     }
 
-    private NodeList parseVar_declare() {
-        Token t = peekAndIncrement();
-        String varName = t.getStr();
+    private Var parseVar_declare() {
+        int t = peekAndIncrement();
+        String varName = strAt(t);
 
-        consumeSym(";");
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add("var")
-                .add(varName)
-                ;
+        return new Var(new VarRef(varName), null);
     }
 
-    private NodeList parseVar_init() {
-        Token t = peekAndIncrement();
-        String varName = t.getStr();
+    private Var parseVar_init() {
+        int t = peekAndIncrement();
+        String varName = strAt(t);
 
-        consumeSym("=");
+        consume(TokenCode.ASSIGN);
 
-        NodeItem expr = parseExpr();
+        Expr expr = parseExpr();
 
-        consumeSym(";");
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add("var")
-                .add(varName)
-                .add(expr)
-                ;
+        return new Var(new VarRef(varName), expr);
     }
 
-    private NodeList parseVar() {
-        consumeKw("var");
+    private Var parseVar() {
+        consume(TokenCode.VAR);
 
-        Token t = peek(1);
+        int t = this.pos + 1;
 
-        if (t.strEq(";")) {
+        if (symEq(t, ";")) {
             return parseVar_declare();
-        } else if (t.strEq("=")) {
+        } else if (symEq(t, "=")) {
             return parseVar_init();
         } else {
             throw unexpected("Unexpected token");
         }
     }
 
-    private NodeItem parseExprFactor() {
-        Token t = peek();
+    /**
+     * A factor other than a parenthesized expression.
+     */
+    private Expr parseExprFactor() {
+        int t = this.pos;
 
-        NodeItem expr;
-
-        switch (t.kind) {
-        case SYM:
-            consumeSym("(");
-            expr = parseExpr();
-            consumeSym(")");
-            break;
+        Expr expr;
 
+        switch (peekKind()) {
         case INT:
             pos++;
-            expr = NodeItem.of(t.getIntVal());
+            expr = new IntLit(this.tokens.intVal(t));
             break;
 
         case IDENT:
             pos++;
-            expr = NodeItem.of(t.getStr());
+            expr = new VarRef(strAt(t));
             break;
 
         default:
-            throw invalidKind(t);
+            throw invalidKind(this.tokens.get(t));
         }
 
         return expr;
     }
 
-    private boolean isBinOp(Token t) {
-        return Arrays.asList("+", "*", "==", "!=").contains(t.getStr());
+    /** precedence of each binary operator by TokenCode; 0 for other tokens */
+    private static final int[] BINOP_PRECEDENCE = new int[TokenCode.NUM_CODES];
+    private static final Op[] BINOP_OPS = new Op[TokenCode.NUM_CODES];
+
+    private static void defBinOp(int code, Op op, int precedence) {
+        BINOP_PRECEDENCE[code] = precedence;
+        BINOP_OPS[code] = op;
+    }
+
+    static {
+        // all the same and left-associative: (a + b) * c == d
+        defBinOp(TokenCode.PLUS    , Op.ADD , 1);
+        defBinOp(TokenCode.ASTERISK, Op.MULT, 1);
+        defBinOp(TokenCode.EQ      , Op.EQ  , 1);
+        defBinOp(TokenCode.NEQ     , Op.NEQ , 1);
     }
 
-    private NodeItem parseExpr() {
-        NodeItem expr = parseExprFactor();
+    /**
+     * Stack of TokenCodes without boxing them.
+     */
+    private static final class CodeStack {
+        private int[] codes = new int[16];
+        private int size = 0;
 
-        while (isBinOp(peek(0))) {
-            Token t = peekAndIncrement();
-            String op = t.getStr();
-            NodeItem rhs = parseExprFactor();
+        boolean isEmpty() {
+            return this.size == 0;
+        }
 
-            expr = NodeItem.of(
-                nodelist()
-                    .add(op)
-                    .add(expr)
-                    .add(rhs)
-            );
+        void clear() {
+            this.size = 0;
         }
 
-        return expr;
+        void push(int code) {
+            if (this.size == this.codes.length) {
+                this.codes = Arrays.copyOf(this.codes, this.size * 2);
+            }
+            this.codes[this.size] = code;
+            this.size++;
+        }
+
+        int peek() {
+            return this.codes[this.size - 1];
+        }
+
+        int pop() {
+            this.size--;
+            return this.codes[this.size];
+        }
+    }
+
+    /** operator stack of parseExpr(), which is not reentrant */
+    private final CodeStack exprOps = new CodeStack();
+
+    /**
+     * Pops the operators with a precedence of at least minPrecedence
+     * (an open parenthesis has 0) and replaces their operands with the result.
+     */
+    private void reduce(Deque<Expr> operands, CodeStack ops, int minPrecedence) {
+        while (! ops.isEmpty() && minPrecedence <= BINOP_PRECEDENCE[ops.peek()]) {
+            Expr rhs = operands.pop();
+            Expr lhs = operands.pop();
+            operands.push(new BinOp(BINOP_OPS[ops.pop()], lhs, rhs));
+        }
     }
 
-    private NodeList parseSet() {
-        consumeKw("set");
+    /**
+     * expr   = factor (binop factor)*
+     * factor = "(" expr ")" | int | ident
+     *
+     * Precedence climbing driven by BINOP_PRECEDENCE.
+     * Operands and pending operators (and open parentheses)
+     * are kept on explicit stacks
+     * so that the nesting depth is limited only by the heap.
+     */
+    private Expr parseExpr() {
+        Deque<Expr> operands = new ArrayDeque<>();
+        CodeStack ops = this.exprOps;
+        ops.clear();
+
+        while (true) {
+            if (peekKind() == Token.Kind.SYM) {
+                consume(TokenCode.PAREN_L);
+                ops.push(TokenCode.PAREN_L);
+                continue;
+            }
 
-        Token t = peekAndIncrement();
-        String varName = t.getStr();
+            operands.push(parseExprFactor());
 
-        consumeSym("=");
+            while (true) {
+                int code = peekCode();
+                int precedence = BINOP_PRECEDENCE[code];
 
-        NodeItem expr = parseExpr();
+                if (0 < precedence) {
+                    // left-associative: the pending ones of the same precedence go first
+                    reduce(operands, ops, precedence);
+                    ops.push(code);
+                    this.pos++;
+                    break;
+                }
 
-        consumeSym(";");
+                reduce(operands, ops, 1);
+                if (ops.isEmpty()) {
+                    return operands.pop();
+                }
 
-        return nodelist()
-                .add("set")
-                .add(varName)
-                .add(expr)
-                ;
+                consume(TokenCode.PAREN_R);
+                ops.pop();
+            }
+        }
     }
 
-    private NodeList parseFuncall() {
-        Token t = peekAndIncrement();
-        String fnName = t.getStr();
+    private Set parseSet() {
+        consume(TokenCode.SET);
+
+        int t = peekAndIncrement();
+        String varName = strAt(t);
+
+        consume(TokenCode.ASSIGN);
+
+        Expr expr = parseExpr();
 
-        consumeSym("(");
-        NodeList args = parseArgs();
-        consumeSym(")");
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add(fnName)
-                .addAll(args)
-                ;
+        return new Set(new VarRef(varName), expr);
     }
 
-    private NodeList parseCall() {
-        consumeKw("call");
+    private Funcall parseFuncall() {
+        int t = peekAndIncrement();
+        String fnName = strAt(t);
 
-        NodeList funcall = parseFuncall();
+        consume(TokenCode.PAREN_L);
+        List<Expr> args = parseArgs();
+        consume(TokenCode.PAREN_R);
 
-        consumeSym(";");
+        return new Funcall(fnName, args);
+    }
+
+    private Call parseCall() {
+        consume(TokenCode.CALL);
+
+        Funcall funcall = parseFuncall();
+
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add("call")
-                .add(funcall)
-                ;
+        return new Call(funcall);
     }
 
-    private NodeList parseCallSet() {
-        consumeKw("call_set");
+    private CallSet parseCallSet() {
+        consume(TokenCode.CALL_SET);
 
-        Token t = peekAndIncrement();
-        String varName = t.getStr();
+        int t = peekAndIncrement();
+        String varName = strAt(t);
 
-        consumeSym("=");
+        consume(TokenCode.ASSIGN);
 
-        NodeList funcall = parseFuncall();
+        Funcall funcall = parseFuncall();
 
-        consumeSym(";");
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add("call_set")
-                .add(varName)
-                .add(funcall)
-                ;
+        return new CallSet(new VarRef(varName), funcall);
     }
 
-    private NodeList parseReturn() {
-        consumeKw("return");
+    private Return parseReturn() {
+        consume(TokenCode.RETURN);
 
-        if (peek().is(Token.Kind.SYM, ";")) {
+        if (peekIs(TokenCode.SEMICOLON)) {
             // 引数なしの return
-            throw notYetImpl(peek());
+            throw notYetImpl(this.tokens.get(this.pos));
         } else {
-            NodeItem expr = parseExpr();
-            consumeSym(";");
+            Expr expr = parseExpr();
+            consume(TokenCode.SEMICOLON);
 
-            return nodelist()
-                    .add("return")
-                    .add(expr)
-                    ;
+            return new Return(expr);
         }
     }
 
-    private NodeList parseWhile() {
-        consumeKw("while");
+    private While parseWhile() {
+        consume(TokenCode.WHILE);
 
-        consumeSym("(");
-        NodeItem expr = parseExpr();
-        consumeSym(")");
+        consume(TokenCode.PAREN_L);
+        Expr expr = parseExpr();
+        consume(TokenCode.PAREN_R);
 
-        consumeSym("{");
-        NodeList stmts = parseStmts();
-        consumeSym("}");
+        consume(TokenCode.BRACE_L);
+        List<Stmt> stmts = parseStmts();
+        consume(TokenCode.BRACE_R);
 
-        return nodelist()
-                .add("while")
-                .add(expr)
-                .add(stmts)
-                ;
+        return new While(expr, stmts);
     }
 
-    private NodeList parseWhenClause() {
-        consumeKw("when");
+    private When parseWhenClause() {
+        consume(TokenCode.WHEN);
 
-        consumeSym("(");
-        NodeItem expr = parseExpr();
-        consumeSym(")");
+        consume(TokenCode.PAREN_L);
+        Expr expr = parseExpr();
+        consume(TokenCode.PAREN_R);
 
-        consumeSym("{");
-        NodeList stmts = parseStmts();
-        consumeSym("}");
+        consume(TokenCode.BRACE_L);
+        List<Stmt> stmts = parseStmts();
+        consume(TokenCode.BRACE_R);
 
-        return nodelist()
-                .add(expr)
-                .addAll(stmts)
-                ;
+        return new When(expr, stmts);
     }
 
-    private NodeList parseCase() {
-        consumeKw("case");
+    private Case parseCase() {
+        consume(TokenCode.CASE);
 
-        NodeList whenClauses = nodelist();
+        List<When> whenClauses = new ArrayList<>();
 
-        while (peek().is(Token.Kind.KW, "when")) {
+        while (peekIs(TokenCode.WHEN)) {
             whenClauses.add(parseWhenClause());
         }
 
-        return nodelist()
-                .add("case")
-                .addAll(whenClauses)
-                ;
+        return new Case(whenClauses);
     }
 
-    private NodeList parseVmComment() {
-        consumeKw("_cmt");
-        consumeSym("(");
+    private VmComment parseVmComment() {
+        consume(TokenCode.VM_CMT);
+        consume(TokenCode.PAREN_L);
 
-        Token t = peekAndIncrement();
-        String comment = t.getStr();
+        int t = peekAndIncrement();
+        String comment = strAt(t);
 
-        consumeSym(")");
-        consumeSym(";");
+        consume(TokenCode.PAREN_R);
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add("_cmt")
-                .add(comment)
-                ;
+        return new VmComment(comment);
     }
 
-    private NodeList parseVmDebug() {
-        consumeKw("_debug");
-        consumeSym("(");
-        consumeSym(")");
-        consumeSym(";");
+    private VmDebug parseVmDebug() {
+        consume(TokenCode.VM_DEBUG);
+        consume(TokenCode.PAREN_L);
+        consume(TokenCode.PAREN_R);
+        consume(TokenCode.SEMICOLON);
 
-        return nodelist()
-                .add("_debug")
-                ;
+        return new VmDebug();
     }
 
-    private NodeList parseStmt() {
-        Token t = peek();
-
-        switch (t.getStr()) {
-        case "set"     : return parseSet();
-        case "call"    : return parseCall();
-        case "call_set": return parseCallSet();
-        case "return"  : return parseReturn();
-        case "while"   : return parseWhile();
-        case "case"    : return parseCase();
-        case "_cmt"    : return parseVmComment();
-        case "_debug"  : return parseVmDebug();
+    private Stmt parseStmt() {
+        switch (peekCode()) {
+        case TokenCode.SET     : return parseSet();
+        case TokenCode.CALL    : return parseCall();
+        case TokenCode.CALL_SET: return parseCallSet();
+        case TokenCode.RETURN  : return parseReturn();
+        case TokenCode.WHILE   : return parseWhile();
+        case TokenCode.CASE    : return parseCase();
+        case TokenCode.VM_CMT  : return parseVmComment();
+        case TokenCode.VM_DEBUG: return parseVmDebug();
         default:
             throw unexpected("Unexpected token");
         }
     }
 
-    private NodeList parseStmts() {
-        NodeList stmts = new NodeList();
+    private List<Stmt> parseStmts() {
+        List<Stmt> stmts = new ArrayList<>();
 
-        while (! peek().is(Token.Kind.SYM, "}")) {
+        while (! peekIs(TokenCode.BRACE_R)) {
             stmts.add(parseStmt());
         }
 
         return stmts;
     }
 
-    private NodeList parseTopStmt() {
-        if (peek().is(Token.Kind.KW, "func")) {
+    private Func parseTopStmt() {
+        if (peekIs(TokenCode.FUNC)) {
             return parseFunc();
         } else {
             throw unexpected("Unexpected token");
         }
     }
 
-    private NodeList parseTopStmts() {
-        NodeList topStmts = new NodeList();
+    private List<Func> parseTopStmts() {
+        List<Func> topStmts = new ArrayList<>();
         while (! isEnd()) {
             topStmts.add(parseTopStmt());
         }
         return topStmts;
     }
 
-    private NodeItem parse() {
-        NodeList topStmts = parseTopStmts();
+    Program parse(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.pos = 0;
+        return parse();
+    }
+
+    /**
+     * Same tree as parse(), stored in a FlatAst.
+     * Each function is written into it as soon as it is parsed.
+     */
+    private FlatAst parseFlat() {
+        FlatAst ast = new FlatAst();
+
+        int root = ast.addList();
+        ast.appendChild(root, ast.addStr("top_stmts"));
+        while (! isEnd()) {
+            ast.appendChild(root, Ast.writeTo(ast, parseTopStmt()));
+        }
+
+        return ast.compact();
+    }
+
+    /**
+     * Same tree as parse(), with equal subtrees shared.
+     * Each function is interned as soon as it is parsed.
+     */
+    private NodeItem parseInterned() {
+        NodeInterner interner = new NodeInterner();
+
+        List<NodeItem> topStmts = new ArrayList<>();
+        topStmts.add(interner.str("top_stmts"));
+        while (! isEnd()) {
+            topStmts.add(Ast.intern(interner, parseTopStmt()));
+        }
+
+        return interner.list(topStmts);
+    }
+
+    private Program parse() {
+        return new Program(parseTopStmts());
+    }
+
+    Program parseParallel(TokenBuffer tokens, ForkJoinPool pool) {
+        this.tokens = tokens;
+        this.pos = 0;
+        return parseParallel(pool);
+    }
+
+    /**
+     * Parallel mode: splits the tokens at function boundaries
+     * and parses runs of functions on the pool, each with its own Parser.
+     *
+     * The boundaries are only guesses from brace matching.
+     * The result is used only if each run was parsed to exactly where the next one starts,
+     * which is what the sequential parse would do from the same positions.
+     * Otherwise (e.g. a syntax error) everything is parsed again sequentially
+     * so that the result or the error is the same as parse().
+     * The buffer is only read, so the tasks can share it.
+     */
+    private Program parseParallel(ForkJoinPool pool) {
+        int[] bounds = runBounds(pool.getParallelism() * 4);
+        int numRuns = bounds.length - 1;
+
+        List<ForkJoinTask<List<Func>>> tasks = new ArrayList<>(numRuns);
+        for (int i = 0; i < numRuns; i++) {
+            int start = bounds[i];
+            int end = bounds[i + 1];
+            tasks.add(pool.submit(() -> new Parser().parseRun(this.tokens, start, end)));
+        }
+
+        List<Func> funcs = new ArrayList<>();
+        for (ForkJoinTask<List<Func>> task : tasks) {
+            List<Func> run;
+            try {
+                run = task.join();
+            } catch (RuntimeException | StackOverflowError e) {
+                run = null;
+            }
+
+            if (run == null) {
+                for (ForkJoinTask<List<Func>> other : tasks) {
+                    other.cancel(false);
+                }
+                this.pos = 0;
+                return parse();
+            }
+            funcs.addAll(run);
+        }
+
+        return new Program(funcs);
+    }
+
+    /**
+     * @return functions in tokens[start, end), or null if the last one does not end at end
+     */
+    private List<Func> parseRun(TokenBuffer tokens, int start, int end) {
+        this.tokens = tokens;
+        this.pos = start;
+
+        List<Func> funcs = new ArrayList<>();
+        while (this.pos < end) {
+            funcs.add(parseTopStmt());
+        }
+        return (this.pos == end) ? funcs : null;
+    }
+
+    private static final int MIN_RUN_SIZE = 4 * 1024;
+
+    /**
+     * Scans the depth of braces for the ends of top-level blocks.
+     * The scan stops at an unbalanced closing brace;
+     * the rest goes to the last run.
+     *
+     * @return run boundaries (token indexes); each run but the last ends right after a block
+     */
+    private int[] runBounds(int maxRuns) {
+        // not a streaming buffer; all tokens have been read
+        int numTokens = this.tokens.size();
+        int runSize = Math.max(MIN_RUN_SIZE, numTokens / maxRuns + 1);
+
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int runStart = 0;
+        int depth = 0;
+        for (int i = 0; i < numTokens; i++) {
+            int code = this.tokens.code(i);
+            if (code == TokenCode.BRACE_L) {
+                depth++;
+            } else if (code == TokenCode.BRACE_R) {
+                depth--;
+                if (depth < 0) {
+                    break;
+                }
+                if (depth == 0 && runSize <= i + 1 - runStart && i + 1 < numTokens) {
+                    runStart = i + 1;
+                    bounds.add(runStart);
+                }
+            }
+        }
+        bounds.add(numTokens);
 
-        return NodeItem.of(
-                nodelist()
-                .add("top_stmts")
-                .addAll(topStmts)
-                );
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
     }
 
 }
@@ -0,0 +1,210 @@
+package vm2gol_v2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.Ast.BinOp;
+import vm2gol_v2.type.Ast.Call;
+import vm2gol_v2.type.Ast.CallSet;
+import vm2gol_v2.type.Ast.Case;
+import vm2gol_v2.type.Ast.Expr;
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Funcall;
+import vm2gol_v2.type.Ast.Return;
+import vm2gol_v2.type.Ast.Set;
+import vm2gol_v2.type.Ast.Stmt;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.Ast.VarRef;
+import vm2gol_v2.type.Ast.VmComment;
+import vm2gol_v2.type.Ast.VmDebug;
+import vm2gol_v2.type.Ast.When;
+import vm2gol_v2.type.Ast.While;
+
+import static vm2gol_v2.util.Utils.invalidType;
+
+/**
+ * Sets the frame displacement of every variable reference in a function
+ * so that the code generator does not have to look names up.
+ *
+ * <ul>
+ *   <li>argument i: [bp:i+2], local i: [bp:-(i+1)]</li>
+ *   <li>locals are looked up before arguments</li>
+ *   <li>a duplicated name keeps its first slot</li>
+ *   <li>a local is visible from its own initializer on</li>
+ *   <li>arguments are not visible in a return expression</li>
+ * </ul>
+ *
+ * A name that is not visible is left UNRESOLVED,
+ * and the code generator throws when it reaches it.
+ * A call_set to a name that is not a local gets [bp:0].
+ */
+public class Resolver {
+
+    private static final Map<String, Integer> NO_NAMES = Map.of();
+
+    private final Map<String, Integer> fnArgs = new HashMap<>();
+    private final Map<String, Integer> lvars = new HashMap<>();
+    private int lvarCount = 0;
+
+    private Resolver(List<String> fnArgNames) {
+        for (int i = 0; i < fnArgNames.size(); i++) {
+            this.fnArgs.putIfAbsent(fnArgNames.get(i), i + 2);
+        }
+    }
+
+    public static Func resolve(Func func) {
+        List<String> fnArgNames = new ArrayList<>(func.params().size());
+        for (Expr param : func.params()) {
+            if (! (param instanceof VarRef ref)) {
+                throw invalidType(Ast.toNodeItem(param));
+            }
+            fnArgNames.add(ref.name());
+        }
+        Resolver resolver = new Resolver(fnArgNames);
+
+        List<Stmt> stmts = new ArrayList<>(func.stmts().size());
+        for (Stmt stmt : func.stmts()) {
+            if (stmt instanceof Var var) {
+                stmts.add(resolver.resolveVar(var));
+            } else {
+                stmts.add(resolver.resolveStmt(stmt));
+            }
+        }
+
+        return new Func(func.name(), func.params(), stmts);
+    }
+
+    // --------------------------------
+
+    private VarRef lvarRef(String name, int dispIfAbsent) {
+        Integer disp = this.lvars.get(name);
+        return new VarRef(name, disp != null ? disp : dispIfAbsent);
+    }
+
+    private Stmt resolveVar(Var var) {
+        this.lvarCount++;
+        this.lvars.putIfAbsent(var.dest().name(), -this.lvarCount);
+
+        VarRef dest = new VarRef(var.dest().name(), this.lvars.get(var.dest().name()));
+        if (var.expr() == null) {
+            return new Var(dest, null);
+        }
+        return new Var(dest, resolveExpr(this.fnArgs, var.expr()));
+    }
+
+    private Stmt resolveStmt(Stmt stmt) {
+        switch (stmt) {
+        case Set set:
+            return new Set(
+                    lvarRef(set.dest().name(), VarRef.UNRESOLVED),
+                    resolveExpr(this.fnArgs, set.expr())
+                    );
+        case Call call:
+            return new Call(resolveFuncall(call.funcall()));
+        case CallSet callSet:
+            return new CallSet(
+                    lvarRef(callSet.dest().name(), 0),
+                    resolveFuncall(callSet.funcall())
+                    );
+        case Return ret:
+            return new Return(resolveExpr(NO_NAMES, ret.expr()));
+        case While wh:
+            return new While(resolveExpr(this.fnArgs, wh.cond()), resolveStmts(wh.stmts()));
+        case Case cs:
+            List<When> whenClauses = new ArrayList<>(cs.whenClauses().size());
+            for (When whenClause : cs.whenClauses()) {
+                whenClauses.add(new When(
+                        resolveExpr(this.fnArgs, whenClause.cond()),
+                        resolveStmts(whenClause.stmts())
+                        ));
+            }
+            return new Case(whenClauses);
+        case Var var:
+            // only at the top level of a function body; rejected by the code generator
+            return var;
+        case VmComment cmt:
+            return cmt;
+        case VmDebug debug:
+            return debug;
+        }
+    }
+
+    private List<Stmt> resolveStmts(List<Stmt> stmts) {
+        List<Stmt> resolved = new ArrayList<>(stmts.size());
+        for (Stmt stmt : stmts) {
+            resolved.add(resolveStmt(stmt));
+        }
+        return resolved;
+    }
+
+    private Funcall resolveFuncall(Funcall funcall) {
+        List<Expr> args = new ArrayList<>(funcall.args().size());
+        for (Expr arg : funcall.args()) {
+            args.add(resolveExpr(this.fnArgs, arg));
+        }
+        return new Funcall(funcall.fnName(), args);
+    }
+
+    private Expr resolveOperand(Map<String, Integer> fnArgs, Expr expr) {
+        if (expr instanceof VarRef ref) {
+            Integer disp = this.lvars.get(ref.name());
+            if (disp == null) {
+                disp = fnArgs.get(ref.name());
+            }
+            return disp != null ? new VarRef(ref.name(), disp) : new VarRef(ref.name());
+        }
+        return expr;
+    }
+
+    /**
+     * A binary expression and its resolved lhs (null until the lhs is done).
+     */
+    private static class ExprTask {
+        final BinOp binOp;
+        Expr lhs = null;
+
+        ExprTask(BinOp binOp) {
+            this.binOp = binOp;
+        }
+    }
+
+    /**
+     * Rebuilds the expression bottom-up on an explicit stack
+     * so that the nesting depth is limited only by the heap.
+     */
+    private Expr resolveExpr(Map<String, Integer> fnArgs, Expr expr) {
+        Deque<ExprTask> stack = new ArrayDeque<>();
+
+        while (true) {
+            // descend along the left operands
+            while (expr instanceof BinOp binOp) {
+                stack.push(new ExprTask(binOp));
+                expr = binOp.lhs();
+            }
+            Expr done = resolveOperand(fnArgs, expr);
+
+            while (true) {
+                if (stack.isEmpty()) {
+                    return done;
+                }
+
+                ExprTask task = stack.peek();
+
+                if (task.lhs == null) {
+                    task.lhs = done;
+                    expr = task.binOp.rhs();
+                    break;
+                }
+
+                done = new BinOp(task.binOp.op(), task.lhs, done);
+                stack.pop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,552 @@
+package vm2gol_v2.type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static vm2gol_v2.util.Utils.invalidType;
+import static vm2gol_v2.util.Utils.unsupported;
+
+/**
+ * Typed AST.
+ *
+ * The NodeList form (written as .vgt.json) is a serialization of it:
+ *
+ * <pre>
+ * Program   ["top_stmts", func...]
+ * Func      ["func", name, [param...], [stmt...]]
+ * Var       ["var", name] / ["var", name, expr]
+ * Set       ["set", name, expr]
+ * Call      ["call", [fnName, arg...]]
+ * CallSet   ["call_set", name, [fnName, arg...]]
+ * Return    ["return", expr]
+ * While     ["while", expr, [stmt...]]
+ * Case      ["case", [expr, stmt...]...]
+ * VmComment ["_cmt", comment]
+ * VmDebug   ["_debug"]
+ * BinOp     [op, expr, expr]
+ * IntLit    int
+ * VarRef    name
+ * </pre>
+ */
+public final class Ast {
+
+    private Ast() {}
+
+    public enum Op {
+        ADD("+"), MULT("*"), EQ("=="), NEQ("!=");
+
+        public final String str;
+
+        Op(String str) {
+            this.str = str;
+        }
+    }
+
+    public sealed interface Expr permits IntLit, VarRef, BinOp {}
+
+    public record IntLit(int val) implements Expr {}
+    /**
+     * disp is the frame displacement ([bp:disp]) set by the Resolver,
+     * or UNRESOLVED if the name is not visible there.
+     */
+    public record VarRef(String name, int disp) implements Expr {
+        public static final int UNRESOLVED = Integer.MIN_VALUE;
+
+        public VarRef(String name) {
+            this(name, UNRESOLVED);
+        }
+
+        public boolean isResolved() {
+            return this.disp != UNRESOLVED;
+        }
+    }
+    public record BinOp(Op op, Expr lhs, Expr rhs) implements Expr {}
+
+    public record Funcall(String fnName, List<Expr> args) {}
+    public record When(Expr cond, List<Stmt> stmts) {}
+
+    public sealed interface Stmt
+            permits Var, Set, Call, CallSet, Return, While, Case, VmComment, VmDebug {}
+
+    /** expr is null without an initializer */
+    public record Var(VarRef dest, Expr expr) implements Stmt {}
+    public record Set(VarRef dest, Expr expr) implements Stmt {}
+    public record Call(Funcall funcall) implements Stmt {}
+    public record CallSet(VarRef dest, Funcall funcall) implements Stmt {}
+    public record Return(Expr expr) implements Stmt {}
+    public record While(Expr cond, List<Stmt> stmts) implements Stmt {}
+    public record Case(List<When> whenClauses) implements Stmt {}
+    public record VmComment(String comment) implements Stmt {}
+    public record VmDebug() implements Stmt {}
+
+    /**
+     * params are VarRefs, or IntLits: the parser accepts an int parameter
+     * and the code generator rejects it.
+     */
+    public record Func(String name, List<Expr> params, List<Stmt> stmts) {}
+    public record Program(List<Func> funcs) {}
+
+    // --------------------------------
+    // to NodeList
+
+    public static NodeList toNodeList(Program program) {
+        NodeListSink sink = new NodeListSink();
+        sink.startList();
+        sink.str("top_stmts");
+        for (Func func : program.funcs()) {
+            write(sink, func);
+        }
+        sink.endList();
+        return sink.root.getItems();
+    }
+
+    public static NodeList toNodeList(Func func) {
+        NodeListSink sink = new NodeListSink();
+        write(sink, func);
+        return sink.root.getItems();
+    }
+
+    public static NodeList toNodeList(Stmt stmt) {
+        NodeListSink sink = new NodeListSink();
+        write(sink, stmt);
+        return sink.root.getItems();
+    }
+
+    public static NodeItem toNodeItem(Expr expr) {
+        NodeListSink sink = new NodeListSink();
+        write(sink, expr);
+        return sink.root;
+    }
+
+    // --------------------------------
+    // to FlatAst
+
+    /**
+     * Writes the NodeList form of func into ast without building it.
+     *
+     * @return the node of func
+     */
+    public static int writeTo(FlatAst ast, Func func) {
+        FlatAstSink sink = new FlatAstSink(ast);
+        write(sink, func);
+        return sink.root;
+    }
+
+    // --------------------------------
+    // to shared NodeItems
+
+    /**
+     * Builds the NodeList form of func from items shared by interner,
+     * without building an unshared copy first.
+     */
+    public static NodeItem intern(NodeInterner interner, Func func) {
+        InternSink sink = new InternSink(interner);
+        write(sink, func);
+        return sink.root;
+    }
+
+    // --------------------------------
+    // the NodeList form, in pre-order
+
+    /**
+     * Receives the NodeList form of a tree in pre-order.
+     * The write() methods are the only walk that produces the NodeList form,
+     * and each representation of it is built by a Sink.
+     */
+    private interface Sink {
+        void startList();
+        void endList();
+        void str(String s);
+        void intVal(int n);
+    }
+
+    private static void write(Sink sink, Func func) {
+        sink.startList();
+        sink.str("func");
+        sink.str(func.name());
+
+        sink.startList();
+        for (Expr param : func.params()) {
+            write(sink, param);
+        }
+        sink.endList();
+
+        sink.startList();
+        writeEach(sink, func.stmts());
+        sink.endList();
+
+        sink.endList();
+    }
+
+    private static void writeEach(Sink sink, List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            write(sink, stmt);
+        }
+    }
+
+    private static void write(Sink sink, Funcall funcall) {
+        sink.startList();
+        sink.str(funcall.fnName());
+        for (Expr arg : funcall.args()) {
+            write(sink, arg);
+        }
+        sink.endList();
+    }
+
+    private static void write(Sink sink, Stmt stmt) {
+        sink.startList();
+
+        switch (stmt) {
+        case Var var:
+            sink.str("var");
+            sink.str(var.dest().name());
+            if (var.expr() != null) {
+                write(sink, var.expr());
+            }
+            break;
+        case Set set:
+            sink.str("set");
+            sink.str(set.dest().name());
+            write(sink, set.expr());
+            break;
+        case Call call:
+            sink.str("call");
+            write(sink, call.funcall());
+            break;
+        case CallSet callSet:
+            sink.str("call_set");
+            sink.str(callSet.dest().name());
+            write(sink, callSet.funcall());
+            break;
+        case Return ret:
+            sink.str("return");
+            write(sink, ret.expr());
+            break;
+        case While wh:
+            sink.str("while");
+            write(sink, wh.cond());
+            sink.startList();
+            writeEach(sink, wh.stmts());
+            sink.endList();
+            break;
+        case Case cs:
+            sink.str("case");
+            for (When when : cs.whenClauses()) {
+                sink.startList();
+                write(sink, when.cond());
+                writeEach(sink, when.stmts());
+                sink.endList();
+            }
+            break;
+        case VmComment cmt:
+            sink.str("_cmt");
+            sink.str(cmt.comment());
+            break;
+        case VmDebug debug:
+            sink.str("_debug");
+            break;
+        }
+
+        sink.endList();
+    }
+
+    /**
+     * Walks on an explicit stack, as expressions can be nested deeply.
+     */
+    private static void write(Sink sink, Expr expr) {
+        Deque<Expr> todo = new ArrayDeque<>();
+        todo.push(expr);
+
+        while (! todo.isEmpty()) {
+            Expr e = todo.pop();
+            if (e == END_LIST) {
+                sink.endList();
+                continue;
+            }
+
+            switch (e) {
+            case IntLit lit:
+                sink.intVal(lit.val());
+                break;
+            case VarRef ref:
+                sink.str(ref.name());
+                break;
+            case BinOp binOp:
+                sink.startList();
+                sink.str(binOp.op().str);
+                // lhs on top, so that it is written first
+                todo.push(END_LIST);
+                todo.push(binOp.rhs());
+                todo.push(binOp.lhs());
+                break;
+            }
+        }
+    }
+
+    /** placeholder on the todo stack of write(Sink, Expr) */
+    private static final Expr END_LIST = new IntLit(0);
+
+    private static final class NodeListSink implements Sink {
+        private final Deque<NodeList> open = new ArrayDeque<>();
+        private NodeItem root = null;
+
+        private void add(NodeItem item) {
+            if (this.open.isEmpty()) {
+                this.root = item;
+            } else {
+                this.open.peek().add(item);
+            }
+        }
+
+        @Override
+        public void startList() {
+            NodeList xs = new NodeList();
+            add(NodeItem.of(xs));
+            this.open.push(xs);
+        }
+
+        @Override
+        public void endList() {
+            this.open.pop();
+        }
+
+        @Override
+        public void str(String s) {
+            add(NodeItem.of(s));
+        }
+
+        @Override
+        public void intVal(int n) {
+            add(NodeItem.of(n));
+        }
+    }
+
+    /**
+     * Interns a list when it is closed, as its children are then shared.
+     */
+    private static final class InternSink implements Sink {
+        private final NodeInterner interner;
+        /** children of the open lists */
+        private final Deque<List<NodeItem>> open = new ArrayDeque<>();
+        private NodeItem root = null;
+
+        InternSink(NodeInterner interner) {
+            this.interner = interner;
+        }
+
+        private void add(NodeItem item) {
+            if (this.open.isEmpty()) {
+                this.root = item;
+            } else {
+                this.open.peek().add(item);
+            }
+        }
+
+        @Override
+        public void startList() {
+            this.open.push(new ArrayList<>());
+        }
+
+        @Override
+        public void endList() {
+            add(this.interner.list(this.open.pop()));
+        }
+
+        @Override
+        public void str(String s) {
+            add(this.interner.str(s));
+        }
+
+        @Override
+        public void intVal(int n) {
+            add(this.interner.intVal(n));
+        }
+    }
+
+    /**
+     * Appends each node to its parent as soon as it is created.
+     */
+    private static final class FlatAstSink implements Sink {
+        private final FlatAst ast;
+        /** the open list nodes */
+        private int[] open = new int[16];
+        private int depth = 0;
+        private int root = -1;
+
+        FlatAstSink(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        private void add(int node) {
+            if (this.depth == 0) {
+                this.root = node;
+            } else {
+                this.ast.appendChild(this.open[this.depth - 1], node);
+            }
+        }
+
+        @Override
+        public void startList() {
+            int node = this.ast.addList();
+            add(node);
+            if (this.depth == this.open.length) {
+                this.open = Arrays.copyOf(this.open, this.depth * 2);
+            }
+            this.open[this.depth] = node;
+            this.depth++;
+        }
+
+        @Override
+        public void endList() {
+            this.depth--;
+        }
+
+        @Override
+        public void str(String s) {
+            add(this.ast.addStr(s));
+        }
+
+        @Override
+        public void intVal(int n) {
+            add(this.ast.addInt(n));
+        }
+    }
+
+    // --------------------------------
+    // from NodeList
+
+    public static Program toProgram(NodeList topStmts) {
+        List<Func> funcs = new ArrayList<>();
+        for (NodeItem topStmt : topStmts.rest().getList()) {
+            funcs.add(toFunc(topStmt));
+        }
+        return new Program(funcs);
+    }
+
+    public static Func toFunc(NodeItem topStmt) {
+        NodeList xs = topStmt.getItems();
+        NodeItem head = xs.first();
+        if (! head.strEq("func")) {
+            throw unsupported(head);
+        }
+
+        String fnName = xs.get(1).getStrVal();
+        List<Expr> params = new ArrayList<>();
+        for (NodeItem param : xs.get(2).getItems().getList()) {
+            params.add(new VarRef(param.getStrVal()));
+        }
+
+        return new Func(fnName, params, toStmts(xs.get(3).getItems()));
+    }
+
+    private static List<Stmt> toStmts(NodeList xs) {
+        List<Stmt> stmts = new ArrayList<>(xs.size());
+        for (NodeItem x : xs.getList()) {
+            stmts.add(toStmt(x.getItems()));
+        }
+        return stmts;
+    }
+
+    private static Funcall toFuncall(NodeList xs) {
+        List<Expr> args = new ArrayList<>(xs.size() - 1);
+        for (NodeItem arg : xs.rest().getList()) {
+            args.add(toExpr(arg));
+        }
+        return new Funcall(xs.first().getStrVal(), args);
+    }
+
+    public static Stmt toStmt(NodeList xs) {
+        String head = xs.first().getStrVal();
+
+        switch (head) {
+        case "var":
+            return new Var(
+                    new VarRef(xs.get(1).getStrVal()),
+                    (xs.size() == 3) ? toExpr(xs.get(2)) : null
+            );
+        case "set":
+            return new Set(new VarRef(xs.get(1).getStrVal()), toExpr(xs.get(2)));
+        case "call":
+            return new Call(toFuncall(xs.get(1).getItems()));
+        case "call_set":
+            return new CallSet(new VarRef(xs.get(1).getStrVal()), toFuncall(xs.get(2).getItems()));
+        case "return":
+            return new Return(toExpr(xs.get(1)));
+        case "while":
+            return new While(toExpr(xs.get(1)), toStmts(xs.get(2).getItems()));
+        case "case":
+            List<When> whenClauses = new ArrayList<>();
+            for (NodeItem when : xs.rest().getList()) {
+                NodeList ys = when.getItems();
+                whenClauses.add(new When(toExpr(ys.first()), toStmts(ys.rest())));
+            }
+            return new Case(whenClauses);
+        case "_cmt":
+            return new VmComment(xs.get(1).getStrVal());
+        case "_debug":
+            return new VmDebug();
+        default:
+            throw unsupported(head);
+        }
+    }
+
+    /**
+     * Walks on an explicit stack, as expressions can be nested deeply.
+     */
+    public static Expr toExpr(NodeItem item) {
+        // lists whose operands are being converted, and the converted operands
+        Deque<NodeList> lists = new ArrayDeque<>();
+        Deque<Expr> done = new ArrayDeque<>();
+        Deque<NodeItem> todo = new ArrayDeque<>();
+        todo.push(item);
+
+        while (! todo.isEmpty()) {
+            NodeItem x = todo.pop();
+            switch (x.type) {
+            case INT:
+                done.push(new IntLit(x.getIntVal()));
+                break;
+            case STR:
+                done.push(new VarRef(x.getStrVal()));
+                break;
+            case LIST:
+                NodeList xs = x.getItems();
+                NodeList args = xs.rest();
+                NodeItem termL = args.get(0);
+                NodeItem termR = args.get(1);
+                todo.push(ITEM_MARK);
+                lists.push(xs);
+                todo.push(termR);
+                todo.push(termL);
+                break;
+            default:
+                throw invalidType(x);
+            }
+
+            while (todo.peek() == ITEM_MARK) {
+                todo.pop();
+                Expr rhs = done.pop();
+                Expr lhs = done.pop();
+                done.push(new BinOp(toOp(lists.pop().first()), lhs, rhs));
+            }
+        }
+
+        return done.pop();
+    }
+
+    private static Op toOp(NodeItem operator) {
+        for (Op op : Op.values()) {
+            if (operator.strEq(op.str)) {
+                return op;
+            }
+        }
+        throw unsupported(operator);
+    }
+
+    /** placeholder on the todo stack of toExpr() */
+    private static final NodeItem ITEM_MARK = NodeItem.of(0);
+
+}
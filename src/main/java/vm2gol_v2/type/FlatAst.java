@@ -0,0 +1,272 @@
+package vm2gol_v2.type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import vm2gol_v2.util.JsonReader;
+
+import static vm2gol_v2.util.Utils.invalidType;
+import static vm2gol_v2.util.Utils.unexpected;
+
+/**
+ * AST stored in parallel arrays instead of an object graph.
+ *
+ * <pre>
+ * types      : NodeItem.Type ordinal
+ * vals       : INT: the value / STR: string id / LIST: number of children
+ * firstChild : LIST: first child, or -1
+ * nextSibling: next item in the parent list, or -1
+ * </pre>
+ *
+ * Strings are stored once in a shared table.
+ * {@link #root()} gives a read-only NodeList view on the tree,
+ * so code written against NodeList/NodeItem can walk it.
+ * The views are created on access and not retained.
+ */
+public class FlatAst {
+
+    private static final NodeItem.Type[] TYPES = NodeItem.Type.values();
+    private static final int NONE = -1;
+
+    private byte[] types;
+    private int[] vals;
+    private int[] firstChild;
+    private int[] nextSibling;
+    /** to append children; only used while building */
+    private int[] lastChild;
+    private int size = 0;
+
+    private final List<String> strs = new ArrayList<>();
+    /** only used while building */
+    private final Map<String, Integer> strIds = new HashMap<>();
+
+    public FlatAst() {
+        this(1024);
+    }
+
+    public FlatAst(int capacity) {
+        this.types = new byte[capacity];
+        this.vals = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.nextSibling = new int[capacity];
+        this.lastChild = new int[capacity];
+    }
+
+    // --------------------------------
+    // building
+
+    private int newNode(NodeItem.Type type, int val) {
+        if (this.lastChild == null) {
+            throw unexpected("already compacted");
+        }
+        if (this.size == this.types.length) {
+            int cap = this.size * 2;
+            this.types = Arrays.copyOf(this.types, cap);
+            this.vals = Arrays.copyOf(this.vals, cap);
+            this.firstChild = Arrays.copyOf(this.firstChild, cap);
+            this.nextSibling = Arrays.copyOf(this.nextSibling, cap);
+            this.lastChild = Arrays.copyOf(this.lastChild, cap);
+        }
+
+        int node = this.size++;
+        this.types[node] = (byte) type.ordinal();
+        this.vals[node] = val;
+        this.firstChild[node] = NONE;
+        this.nextSibling[node] = NONE;
+        this.lastChild[node] = NONE;
+        return node;
+    }
+
+    public int addList() {
+        return newNode(NodeItem.Type.LIST, 0);
+    }
+
+    public int addInt(int n) {
+        return newNode(NodeItem.Type.INT, n);
+    }
+
+    public int addStr(String s) {
+        Integer id = this.strIds.get(s);
+        if (id == null) {
+            id = this.strs.size();
+            this.strs.add(s);
+            this.strIds.put(s, id);
+        }
+        return newNode(NodeItem.Type.STR, id);
+    }
+
+    public void appendChild(int parent, int child) {
+        if (this.lastChild == null) {
+            throw unexpected("already compacted");
+        }
+        if (this.types[parent] != NodeItem.Type.LIST.ordinal()) {
+            throw invalidType(type(parent));
+        }
+
+        int last = this.lastChild[parent];
+        if (last == NONE) {
+            this.firstChild[parent] = child;
+        } else {
+            this.nextSibling[last] = child;
+        }
+        this.lastChild[parent] = child;
+        this.vals[parent]++;
+    }
+
+    /**
+     * Copies the given tree.
+     *
+     * @return the node for the root of the copy
+     */
+    public int add(NodeItem item) {
+        if (item.type != NodeItem.Type.LIST) {
+            return addScalar(item);
+        }
+
+        int top = addList();
+        // open lists: their nodes and the iterators over their items
+        int[] parents = new int[16];
+        Deque<Iterator<NodeItem>> its = new ArrayDeque<>();
+        int depth = 0;
+        parents[depth++] = top;
+        its.push(item.getItems().getList().iterator());
+
+        while (0 < depth) {
+            Iterator<NodeItem> it = its.peek();
+            if (! it.hasNext()) {
+                its.pop();
+                depth--;
+                continue;
+            }
+
+            NodeItem child = it.next();
+            if (child.type == NodeItem.Type.LIST) {
+                int node = addList();
+                appendChild(parents[depth - 1], node);
+                if (depth == parents.length) {
+                    parents = Arrays.copyOf(parents, depth * 2);
+                }
+                parents[depth++] = node;
+                its.push(child.getItems().getList().iterator());
+            } else {
+                appendChild(parents[depth - 1], addScalar(child));
+            }
+        }
+
+        return top;
+    }
+
+    private int addScalar(NodeItem item) {
+        switch (item.type) {
+        case INT: return addInt(item.getIntVal());
+        case STR: return addStr(item.getStrVal());
+        default:
+            throw invalidType(item);
+        }
+    }
+
+    /**
+     * Trims the arrays to the number of nodes and drops what is only
+     * needed to append. No nodes can be added after this.
+     */
+    public FlatAst compact() {
+        this.types = Arrays.copyOf(this.types, this.size);
+        this.vals = Arrays.copyOf(this.vals, this.size);
+        this.firstChild = Arrays.copyOf(this.firstChild, this.size);
+        this.nextSibling = Arrays.copyOf(this.nextSibling, this.size);
+        this.lastChild = null;
+        this.strIds.clear();
+        return this;
+    }
+
+    /**
+     * Builds the tree from JSON events without an intermediate object graph.
+     */
+    public static FlatAst fromJson(JsonReader r) {
+        FlatAst ast = new FlatAst();
+        int[] parents = new int[16];
+        int depth = 0;
+
+        while (true) {
+            JsonReader.Event ev = r.next();
+            if (ev == JsonReader.Event.END) {
+                return ast.compact();
+            }
+            if (ev == JsonReader.Event.END_LIST) {
+                depth--;
+                continue;
+            }
+
+            int node;
+            switch (ev) {
+            case START_LIST: node = ast.addList()           ; break;
+            case INT       : node = ast.addInt(r.intVal())  ; break;
+            case STR       : node = ast.addStr(r.strVal())  ; break;
+            default:
+                throw unexpected(ev);
+            }
+            if (0 < depth) {
+                ast.appendChild(parents[depth - 1], node);
+            }
+
+            if (ev == JsonReader.Event.START_LIST) {
+                if (depth == parents.length) {
+                    parents = Arrays.copyOf(parents, depth * 2);
+                }
+                parents[depth++] = node;
+            }
+        }
+    }
+
+    // --------------------------------
+    // reading
+
+    public int size() {
+        return this.size;
+    }
+
+    public NodeItem.Type type(int node) {
+        return TYPES[this.types[node]];
+    }
+
+    public int intVal(int node) {
+        return this.vals[node];
+    }
+
+    public String str(int node) {
+        return this.strs.get(this.vals[node]);
+    }
+
+    public int childCount(int node) {
+        return this.vals[node];
+    }
+
+    public int firstChild(int node) {
+        return this.firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        return this.nextSibling[node];
+    }
+
+    /**
+     * @return a view on the first node, which must be a list
+     */
+    public NodeList root() {
+        if (this.size == 0) {
+            throw unexpected("empty tree");
+        }
+        return item(0).getItems();
+    }
+
+    public NodeItem item(int node) {
+        return new FlatNodeItem(this, node);
+    }
+
+}
@@ -0,0 +1,43 @@
+package vm2gol_v2.type;
+
+import static vm2gol_v2.util.Utils.invalidType;
+
+/**
+ * View on a node of a {@link FlatAst}.
+ */
+class FlatNodeItem extends NodeItem {
+
+    private final FlatAst ast;
+    private final int node;
+
+    FlatNodeItem(FlatAst ast, int node) {
+        super(ast.type(node));
+        this.ast = ast;
+        this.node = node;
+    }
+
+    @Override
+    public String getStrVal() {
+        if (this.type != Type.STR) {
+            throw invalidType(this);
+        }
+        return this.ast.str(this.node);
+    }
+
+    @Override
+    public int getIntVal() {
+        if (this.type != Type.INT) {
+            throw invalidType(this);
+        }
+        return this.ast.intVal(this.node);
+    }
+
+    @Override
+    public NodeList getItems() {
+        if (this.type != Type.LIST) {
+            throw invalidType(this);
+        }
+        return new FlatNodeList(this.ast, this.ast.firstChild(this.node), this.ast.childCount(this.node));
+    }
+
+}
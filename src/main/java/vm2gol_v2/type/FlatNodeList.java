@@ -0,0 +1,113 @@
+package vm2gol_v2.type;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import vm2gol_v2.util.Utils;
+
+/**
+ * Read-only view on the children of a list node of a {@link FlatAst},
+ * from a given child to the last one.
+ * The children are reached through firstChild/nextSibling,
+ * so iterating costs nothing but the iterator,
+ * and get(i) walks i siblings.
+ */
+class FlatNodeList extends NodeList {
+
+    private final FlatAst ast;
+    /** first child in the view, or -1 */
+    private final int first;
+    private final int size;
+
+    FlatNodeList(FlatAst ast, int first, int size) {
+        super(null);
+        this.ast = ast;
+        this.first = first;
+        this.size = size;
+    }
+
+    @Override
+    public NodeItem get(int index) {
+        if (index < 0 || this.size <= index) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.size);
+        }
+
+        int child = this.first;
+        for (int i = 0; i < index; i++) {
+            child = this.ast.nextSibling(child);
+        }
+        return this.ast.item(child);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public NodeList rest() {
+        if (this.size == 0) {
+            return super.rest();
+        }
+        return new FlatNodeList(this.ast, this.ast.nextSibling(this.first), this.size - 1);
+    }
+
+    private class Children implements Iterator<NodeItem> {
+        private int next = FlatNodeList.this.first;
+        private int remaining = FlatNodeList.this.size;
+
+        @Override
+        public boolean hasNext() {
+            return 0 < this.remaining;
+        }
+
+        @Override
+        public NodeItem next() {
+            if (this.remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            NodeItem item = FlatNodeList.this.ast.item(this.next);
+            this.next = FlatNodeList.this.ast.nextSibling(this.next);
+            this.remaining--;
+            return item;
+        }
+    }
+
+    @Override
+    public List<NodeItem> getList() {
+        return new AbstractList<NodeItem>() {
+            @Override
+            public NodeItem get(int index) {
+                return FlatNodeList.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return FlatNodeList.this.size();
+            }
+
+            @Override
+            public Iterator<NodeItem> iterator() {
+                return new Children();
+            }
+        };
+    }
+
+    @Override
+    public NodeList add(NodeItem item) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public NodeList addAll(NodeList stmts) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public String toString() {
+        return Utils.toString(new NodeList(getList()));
+    }
+
+}
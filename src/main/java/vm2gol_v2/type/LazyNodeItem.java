@@ -0,0 +1,53 @@
+package vm2gol_v2.type;
+
+import vm2gol_v2.util.JsonTape;
+import static vm2gol_v2.util.Utils.invalidType;
+
+/**
+ * An item on a {@link JsonTape}.
+ * The value is decoded from the source chars when a getter is called.
+ */
+public class LazyNodeItem extends NodeItem {
+
+    private final JsonTape tape;
+    private final int node;
+    private String strVal;
+    private NodeList items;
+
+    public LazyNodeItem(JsonTape tape, int node) {
+        super(tape.type(node));
+        this.tape = tape;
+        this.node = node;
+    }
+
+    @Override
+    public String getStrVal() {
+        if (this.type != Type.STR) {
+            throw invalidType(this);
+        }
+        if (this.strVal == null) {
+            this.strVal = this.tape.str(this.node);
+        }
+        return this.strVal;
+    }
+
+    @Override
+    public int getIntVal() {
+        if (this.type != Type.INT) {
+            throw invalidType(this);
+        }
+        return this.tape.intVal(this.node);
+    }
+
+    @Override
+    public NodeList getItems() {
+        if (this.type != Type.LIST) {
+            throw invalidType(this);
+        }
+        if (this.items == null) {
+            this.items = new LazyNodeList(this.tape, this.node);
+        }
+        return this.items;
+    }
+
+}
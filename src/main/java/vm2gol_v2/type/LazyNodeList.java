@@ -0,0 +1,55 @@
+package vm2gol_v2.type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import vm2gol_v2.util.JsonTape;
+import vm2gol_v2.util.Utils;
+
+/**
+ * A list on a {@link JsonTape}.
+ * The child items are created on first access,
+ * and they decode their values only when asked.
+ */
+public class LazyNodeList extends NodeList {
+
+    private final JsonTape tape;
+    private final int node;
+    private List<NodeItem> items;
+
+    public LazyNodeList(JsonTape tape, int node) {
+        super(null);
+        this.tape = tape;
+        this.node = node;
+    }
+
+    @Override
+    public List<NodeItem> getList() {
+        if (this.items == null) {
+            int n = this.tape.childCount(this.node);
+            List<NodeItem> xs = new ArrayList<>(n);
+
+            int child = this.node + 1;
+            for (int i = 0; i < n; i++) {
+                xs.add(new LazyNodeItem(this.tape, child));
+                child = this.tape.next(child);
+            }
+            this.items = xs;
+        }
+        return this.items;
+    }
+
+    @Override
+    public int size() {
+        if (this.items == null) {
+            return this.tape.childCount(this.node);
+        }
+        return this.items.size();
+    }
+
+    @Override
+    public String toString() {
+        return Utils.toString(new NodeList(getList()));
+    }
+
+}
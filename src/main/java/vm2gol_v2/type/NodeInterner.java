@@ -0,0 +1,164 @@
+package vm2gol_v2.type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static vm2gol_v2.util.Utils.invalidType;
+
+/**
+ * Hash-consing factory:
+ * returns one shared instance for each structurally equal subtree.
+ *
+ * The children of a shared list are themselves shared,
+ * so two lists are equal when their children are identical.
+ * Each shared item keeps its structural hash,
+ * and a lookup compares no deeper than one level.
+ *
+ * Shared lists are immutable; adding to them throws.
+ */
+public class NodeInterner {
+
+    private final Map<String, NodeItem> strs = new HashMap<>();
+    private final Map<Integer, NodeItem> ints = new HashMap<>();
+    private final Map<ListKey, NodeItem> lists = new HashMap<>();
+
+    private long lookups = 0;
+
+    private static final class ListKey {
+        final List<NodeItem> children;
+        final int hash;
+
+        ListKey(List<NodeItem> children) {
+            int h = NodeItem.Type.LIST.ordinal();
+            for (NodeItem child : children) {
+                h = 31 * h + child.hash;
+            }
+            this.children = children;
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (! (obj instanceof ListKey)) {
+                return false;
+            }
+            ListKey other = (ListKey) obj;
+            if (this.hash != other.hash || this.children.size() != other.children.size()) {
+                return false;
+            }
+            for (int i = 0; i < this.children.size(); i++) {
+                if (this.children.get(i) != other.children.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public NodeItem str(String s) {
+        this.lookups++;
+        return this.strs.computeIfAbsent(s, k -> {
+            NodeItem item = NodeItem.of(k);
+            item.hash = 31 * NodeItem.Type.STR.ordinal() + k.hashCode();
+            return item;
+        });
+    }
+
+    public NodeItem intVal(int n) {
+        this.lookups++;
+        return this.ints.computeIfAbsent(n, k -> {
+            NodeItem item = NodeItem.of(k);
+            item.hash = 31 * NodeItem.Type.INT.ordinal() + k;
+            return item;
+        });
+    }
+
+    /**
+     * @param children items returned by this interner
+     */
+    public NodeItem list(List<NodeItem> children) {
+        this.lookups++;
+        ListKey key = new ListKey(List.copyOf(children));
+        return this.lists.computeIfAbsent(key, k -> {
+            NodeItem item = NodeItem.of(new NodeList(k.children));
+            item.hash = k.hash;
+            return item;
+        });
+    }
+
+    /**
+     * @return the shared instance equal to the given tree
+     */
+    public NodeItem intern(NodeItem item) {
+        if (item.type != NodeItem.Type.LIST) {
+            return scalar(item);
+        }
+
+        // iterators of the open lists and their interned children so far
+        Deque<Iterator<NodeItem>> its = new ArrayDeque<>();
+        Deque<List<NodeItem>> childrens = new ArrayDeque<>();
+        its.push(item.getItems().getList().iterator());
+        childrens.push(new ArrayList<>());
+
+        while (true) {
+            Iterator<NodeItem> it = its.peek();
+            if (it.hasNext()) {
+                NodeItem child = it.next();
+                if (child.type == NodeItem.Type.LIST) {
+                    its.push(child.getItems().getList().iterator());
+                    childrens.push(new ArrayList<>());
+                } else {
+                    childrens.peek().add(scalar(child));
+                }
+                continue;
+            }
+
+            its.pop();
+            NodeItem shared = list(childrens.pop());
+            if (its.isEmpty()) {
+                return shared;
+            }
+            childrens.peek().add(shared);
+        }
+    }
+
+    public NodeList intern(NodeList list) {
+        return intern(NodeItem.of(list)).getItems();
+    }
+
+    private NodeItem scalar(NodeItem item) {
+        switch (item.type) {
+        case INT: return intVal(item.getIntVal());
+        case STR: return str(item.getStrVal());
+        default:
+            throw invalidType(item);
+        }
+    }
+
+    // --------------------------------
+
+    /**
+     * @return number of distinct items
+     */
+    public int size() {
+        return this.strs.size() + this.ints.size() + this.lists.size();
+    }
+
+    /**
+     * @return number of items requested, shared or not
+     */
+    public long lookups() {
+        return this.lookups;
+    }
+
+}
@@ -1,5 +1,9 @@
 package vm2gol_v2.type;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
 import vm2gol_v2.util.Json;
 import vm2gol_v2.util.Utils;
 import static vm2gol_v2.util.Utils.invalidType;
@@ -15,6 +19,8 @@ public class NodeItem {
     private Integer intVal;
     private String strVal;
     private NodeList items;
+    /** structural hash; set only on items shared by a NodeInterner */
+    int hash;
 
     public NodeItem(String s) {
         this.type = Type.STR;
@@ -31,6 +37,13 @@ public class NodeItem {
         this.intVal = n;
     }
 
+    /**
+     * For subclasses that supply the value through the getters.
+     */
+    protected NodeItem(Type type) {
+        this.type = type;
+    }
+
     public static NodeItem of(String s) {
         return new NodeItem(s);
     }
@@ -68,11 +81,11 @@ public class NodeItem {
     public String toString() {
         switch (this.type) {
         case STR:
-            return DQ + this.strVal + DQ;
+            return DQ + getStrVal() + DQ;
         case INT: 
-            return Utils.toString(this.intVal);
+            return Utils.toString(getIntVal());
         case LIST: 
-            return Json.toJson(items);
+            return Json.toJson(getItems());
         default:
             throw new RuntimeException("must not happen");
         }
@@ -82,36 +95,54 @@ public class NodeItem {
         if (this.type != Type.STR) {
             throw invalidType(this);
         }
-        return Utils.strEq(str, this.strVal);
+        return Utils.strEq(str, getStrVal());
     }
 
     public String inspect() {
-        switch (this.type) {
-        case INT:
-            return String.valueOf(this.intVal);
-        case STR:
-            return DQ + this.strVal + DQ;
-        case LIST:
-            return inspectList();
-        default:
-            throw invalidType(this.type);
-        }
-    }
-
-    private String inspectList() {
-        String s = "";
-        s += "[";
+        StringBuilder sb = new StringBuilder();
+        // iterators of the open lists
+        Deque<Iterator<NodeItem>> stack = new ArrayDeque<>();
+
+        NodeItem item = this;
+        while (true) {
+            // whether a list has just been opened
+            boolean opened = false;
+
+            switch (item.type) {
+            case INT:
+                sb.append(item.getIntVal());
+                break;
+            case STR:
+                sb.append(DQ).append(item.getStrVal()).append(DQ);
+                break;
+            case LIST:
+                sb.append("[");
+                stack.push(item.getItems().getList().iterator());
+                opened = true;
+                break;
+            default:
+                throw invalidType(item.type);
+            }
 
-        for (int i=0; i<this.items.size(); i++) {
-            NodeItem item = this.items.get(i);
-            if (i >= 1) {
-                s += ", ";
+            while (true) {
+                if (stack.isEmpty()) {
+                    return sb.toString();
+                }
+
+                Iterator<NodeItem> it = stack.peek();
+                if (it.hasNext()) {
+                    if (! opened) {
+                        sb.append(", ");
+                    }
+                    item = it.next();
+                    break;
+                }
+
+                sb.append("]");
+                stack.pop();
+                opened = false;
             }
-            s += item.inspect();
         }
-
-        s += "]";
-        return s;
     }
 
 }
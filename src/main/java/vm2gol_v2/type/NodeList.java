@@ -1,23 +1,24 @@
 package vm2gol_v2.type;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import vm2gol_v2.util.Utils;
 
 public class NodeList {
 
-    private List<NodeItem> items = new ArrayList<>();
+    private List<NodeItem> items;
 
-    public NodeList() {}
+    public NodeList() {
+        this(new ArrayList<>());
+    }
 
     public NodeList(List<NodeItem> items) {
         this.items = items;
     }
 
     public NodeList addAll(NodeList stmts) {
-        this.items.addAll(stmts.items);
+        getList().addAll(stmts.getList());
         return this;
     }
 
@@ -32,37 +33,38 @@ public class NodeList {
     }
 
     public NodeList add(NodeItem item) {
-        this.items.add(item);
+        getList().add(item);
         return this;
     }
 
     public NodeItem first() {
-        return items.get(0);
+        return get(0);
     }
 
+    /**
+     * @return a read-only view without the first item
+     */
     public NodeList rest() {
-        return new NodeList(
-                items.subList(1, items.size())
-                );
+        return new NodeListView(getList(), 1, size(), false);
     }
 
     public NodeItem get(int index) {
-        return this.items.get(index);
+        return getList().get(index);
     }
 
     public int size() {
-        return items.size();
+        return getList().size();
     }
 
     public List<NodeItem> getList() {
         return this.items;
     }
 
+    /**
+     * @return a read-only view in reverse order
+     */
     public NodeList reverse() {
-        List<NodeItem> newItems = new ArrayList<>(getList());
-        Collections.copy(newItems, getList());
-        Collections.reverse(newItems);
-        return new NodeList(newItems);
+        return new NodeListView(getList(), 0, size(), true);
     }
 
     public static NodeList empty() {
@@ -70,7 +72,7 @@ public class NodeList {
     }
 
     public boolean isEmpty() {
-        return this.items.isEmpty();
+        return size() == 0;
     }
 
     @Override
@@ -0,0 +1,78 @@
+package vm2gol_v2.type;
+
+import java.util.List;
+import java.util.Objects;
+
+import vm2gol_v2.util.Utils;
+
+/**
+ * Read-only view on a range of another list's items,
+ * optionally in reverse order.
+ * Returned by {@link NodeList#rest()} and {@link NodeList#reverse()}
+ * so that they do not copy.
+ */
+class NodeListView extends NodeList {
+
+    private final List<NodeItem> items;
+    private final int from;
+    private final int to;
+    private final boolean reversed;
+
+    NodeListView(List<NodeItem> items, int from, int to, boolean reversed) {
+        super(null);
+        Objects.checkFromToIndex(from, to, items.size());
+        this.items = items;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    @Override
+    public NodeItem get(int index) {
+        Objects.checkIndex(index, size());
+        if (this.reversed) {
+            return this.items.get(this.to - 1 - index);
+        }
+        return this.items.get(this.from + index);
+    }
+
+    @Override
+    public int size() {
+        return this.to - this.from;
+    }
+
+    @Override
+    public List<NodeItem> getList() {
+        List<NodeItem> xs = this.items.subList(this.from, this.to);
+        return this.reversed ? xs.reversed() : xs;
+    }
+
+    @Override
+    public NodeList rest() {
+        if (this.reversed) {
+            return new NodeListView(this.items, this.from, this.to - 1, true);
+        }
+        return new NodeListView(this.items, this.from + 1, this.to, false);
+    }
+
+    @Override
+    public NodeList reverse() {
+        return new NodeListView(this.items, this.from, this.to, ! this.reversed);
+    }
+
+    @Override
+    public NodeList add(NodeItem item) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public NodeList addAll(NodeList stmts) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public String toString() {
+        return Utils.toString(new NodeList(getList()));
+    }
+
+}
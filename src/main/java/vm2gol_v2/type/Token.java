@@ -1,11 +1,14 @@
 package vm2gol_v2.type;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import vm2gol_v2.util.BinIO;
 import vm2gol_v2.util.Utils;
 
 import static vm2gol_v2.util.Utils.invalidKind;
 
-import vm2gol_v2.util.Json;
-
 public class Token {
 
     public enum Kind {
@@ -33,6 +36,15 @@ public class Token {
             }
             throw new IllegalArgumentException(str);
         }
+
+        private static final Kind[] VALUES = Kind.values();
+
+        public static Kind ofOrdinal(int ordinal) {
+            if (ordinal < 0 || VALUES.length <= ordinal) {
+                throw new IllegalArgumentException(String.valueOf(ordinal));
+            }
+            return VALUES[ordinal];
+        }
     }
 
     private int lineNo;
@@ -45,6 +57,14 @@ public class Token {
         this.str = val;
     }
 
+    public int getLineNo() {
+        return this.lineNo;
+    }
+
+    public Token withLineNo(int lineNo) {
+        return new Token(lineNo, this.kind, this.str);
+    }
+
     public int getIntVal() {
         if (this.kind != Kind.INT) {
             throw invalidKind(this);
@@ -73,15 +93,6 @@ public class Token {
         return this.kind == kind && Utils.strEq(this.str, str);
     }
 
-    public static Token fromLine(String line) {
-        NodeList list = Json.parse(line);
-        return new Token(
-                list.getInt(0),
-                Kind.of(list.getStr(1)),
-                list.getStr(2)
-        );
-    }
-
     public String toLine() {
         return String.format(
                 "[%d, \"%s\", \"%s\"]",
@@ -91,4 +102,35 @@ public class Token {
                 );
     }
 
+    /**
+     * Writes the same text as <code>toLine() + LF</code>
+     * without creating a Token.
+     */
+    public static void writeLine(
+            Writer w, int lineNo, Kind kind, char[] cs, int offset, int len
+    ) throws IOException {
+        w.write("[");
+        w.write(Integer.toString(lineNo));
+        w.write(", \"");
+        w.write(kind.getStr());
+        w.write("\", \"");
+        w.write(cs, offset, len);
+        w.write("\"]");
+        w.write(Utils.LF);
+    }
+
+    // --------------------------------
+
+    /**
+     * Binary form: varint lineNo, kind (ordinal) byte,
+     * then the string as varint byte length and UTF-8 bytes.
+     */
+    public static void writeBinary(
+            OutputStream out, int lineNo, Kind kind, char[] cs, int offset, int len
+    ) throws IOException {
+        BinIO.writeVarint(out, lineNo);
+        out.write(kind.ordinal());
+        BinIO.writeUtf8(out, cs, offset, len);
+    }
+
 }
@@ -0,0 +1,477 @@
+package vm2gol_v2.type;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import vm2gol_v2.type.Token.Kind;
+import vm2gol_v2.util.BinIO;
+import vm2gol_v2.util.Utils;
+
+import static vm2gol_v2.util.Utils.unexpected;
+
+/**
+ * Tokens stored column-wise.
+ * The text of a token is a range of <code>src</code>;
+ * a String is created only when {@link #str(int)} is called.
+ *
+ * A streaming buffer reads tokens only when they are accessed
+ * and can release the ones already parsed (see {@link #discardBefore(int)}).
+ * Indexes are always counted from the first token of the input.
+ */
+public class TokenBuffer {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private char[] src;
+    private int srcLen;
+
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    /** see TokenCode */
+    private byte[] codes = new byte[INITIAL_CAPACITY];
+    private int[] lineNos = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /** index of the token stored at 0 */
+    private int base = 0;
+    /** reads more tokens; null when all of them have been read */
+    private Feeder feeder = null;
+
+    /**
+     * @param src text the token ranges point into
+     */
+    public TokenBuffer(char[] src) {
+        this.src = src;
+        this.srcLen = src.length;
+    }
+
+    public void add(int lineNo, Kind kind, int start, int end) {
+        if (this.size == this.kinds.length) {
+            int newCapacity = this.size * 2;
+            this.kinds = Arrays.copyOf(this.kinds, newCapacity);
+            this.codes = Arrays.copyOf(this.codes, newCapacity);
+            this.lineNos = Arrays.copyOf(this.lineNos, newCapacity);
+            this.starts = Arrays.copyOf(this.starts, newCapacity);
+            this.ends = Arrays.copyOf(this.ends, newCapacity);
+        }
+
+        this.kinds[this.size] = (byte) kind.ordinal();
+        this.codes[this.size] = (byte) TokenCode.of(kind, this.src, start, end);
+        this.lineNos[this.size] = lineNo;
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.size++;
+    }
+
+    /**
+     * Number of tokens read so far, including the discarded ones.
+     */
+    public int size() {
+        return this.base + this.size;
+    }
+
+    /**
+     * Whether the input has a token at i.
+     */
+    public boolean has(int i) {
+        fill(i);
+        return i < size();
+    }
+
+    /**
+     * May read more tokens and replace the arrays,
+     * so call it before reading an array field: this.xs[index(i)] is wrong.
+     *
+     * @return position of token i in the arrays
+     */
+    private int index(int i) {
+        fill(i);
+        return Objects.checkIndex(i - this.base, this.size);
+    }
+
+    private void fill(int i) {
+        if (this.feeder == null) {
+            return;
+        }
+        try {
+            while (size() <= i) {
+                if (! this.feeder.feed(this)) {
+                    this.feeder = null;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Releases the tokens before i of a streaming buffer.
+     * They must not be accessed any more.
+     */
+    public void discardBefore(int i) {
+        int n = Math.min(i - this.base, this.size);
+        if (this.feeder == null || n <= 0) {
+            return;
+        }
+
+        int rest = this.size - n;
+        int srcFrom = (rest > 0) ? this.starts[n] : this.srcLen;
+
+        System.arraycopy(this.kinds, n, this.kinds, 0, rest);
+        System.arraycopy(this.codes, n, this.codes, 0, rest);
+        System.arraycopy(this.lineNos, n, this.lineNos, 0, rest);
+        System.arraycopy(this.starts, n, this.starts, 0, rest);
+        System.arraycopy(this.ends, n, this.ends, 0, rest);
+        for (int j = 0; j < rest; j++) {
+            this.starts[j] -= srcFrom;
+            this.ends[j] -= srcFrom;
+        }
+        System.arraycopy(this.src, srcFrom, this.src, 0, this.srcLen - srcFrom);
+        this.srcLen -= srcFrom;
+
+        this.base += n;
+        this.size = rest;
+    }
+
+    public Kind kind(int i) {
+        int j = index(i);
+        return Kind.ofOrdinal(this.kinds[j]);
+    }
+
+    /**
+     * @return TokenCode of token i
+     */
+    public int code(int i) {
+        int j = index(i);
+        return this.codes[j];
+    }
+
+    public int lineNo(int i) {
+        int j = index(i);
+        return this.lineNos[j];
+    }
+
+    public String str(int i) {
+        int j = index(i);
+        return new String(this.src, this.starts[j], this.ends[j] - this.starts[j]);
+    }
+
+    public boolean strEq(int i, String s) {
+        int j = index(i);
+
+        int start = this.starts[j];
+        int len = this.ends[j] - start;
+        if (len != s.length()) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            if (this.src[start + k] != s.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as Integer.valueOf(str(i)) without creating the String.
+     */
+    public int intVal(int i) {
+        Kind kind = kind(i);
+        if (kind != Kind.INT) {
+            throw Utils.invalidKind(get(i));
+        }
+
+        int j = index(i);
+        int pos = this.starts[j];
+        int end = this.ends[j];
+        boolean negative = this.src[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+
+        long n = 0;
+        for (; pos < end; pos++) {
+            n = n * 10 + (this.src[pos] - '0');
+            if (n > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("For input string: \"" + str(i) + "\"");
+            }
+        }
+        if (negative) {
+            n = -n;
+        }
+        if (n > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + str(i) + "\"");
+        }
+        return (int) n;
+    }
+
+    /**
+     * Creates a Token object, e.g. for error messages.
+     */
+    public Token get(int i) {
+        return new Token(lineNo(i), kind(i), str(i));
+    }
+
+    // --------------------------------
+
+    /**
+     * Reads token lines (see {@link Token#toLine()}).
+     * Token strings stay in <code>src</code>; nothing is copied out.
+     */
+    public static TokenBuffer fromLines(char[] src) {
+        TokenBuffer buf = new TokenBuffer(src);
+        LineReader r = new LineReader(src);
+
+        while (r.pos < src.length) {
+            if (src[r.pos] == '\n') {
+                r.pos++;
+                continue;
+            }
+            r.readLine(buf);
+        }
+
+        return buf;
+    }
+
+    /**
+     * Reads token lines lazily, one line per token.
+     * Each line is appended to <code>src</code> and the token points into it.
+     */
+    public static TokenBuffer streamLines(Reader in) {
+        TokenBuffer buf = new TokenBuffer(new char[4096]);
+        buf.srcLen = 0;
+        buf.feeder = new LineFeeder(in);
+        return buf;
+    }
+
+    private interface Feeder {
+        /**
+         * Adds the next token to buf.
+         * @return false at the end of the input
+         */
+        boolean feed(TokenBuffer buf) throws IOException;
+    }
+
+    private static class LineFeeder implements Feeder {
+
+        private final Reader in;
+        private final char[] cbuf = new char[8192];
+        private int pos = 0;
+        private int len = 0;
+
+        LineFeeder(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * @return -1 at the end of the input
+         */
+        private int read() throws IOException {
+            if (this.pos == this.len) {
+                this.len = this.in.read(this.cbuf, 0, this.cbuf.length);
+                this.pos = 0;
+                if (this.len <= 0) {
+                    this.len = 0;
+                    return -1;
+                }
+            }
+            return this.cbuf[this.pos++];
+        }
+
+        @Override
+        public boolean feed(TokenBuffer buf) throws IOException {
+            int c;
+            // skip empty lines
+            while ((c = read()) == '\n') {
+                ;
+            }
+            if (c < 0) {
+                return false;
+            }
+
+            int lineStart = buf.srcLen;
+            for (; c >= 0 && c != '\n'; c = read()) {
+                buf.ensureSrcCapacity(buf.srcLen + 2);
+                buf.src[buf.srcLen++] = (char) c;
+            }
+            // LineReader stops at the LF
+            buf.src[buf.srcLen++] = '\n';
+
+            LineReader r = new LineReader(buf.src);
+            r.pos = lineStart;
+            r.readLine(buf);
+            return true;
+        }
+
+    }
+
+    private static class LineReader {
+
+        private final char[] cs;
+        private int pos = 0;
+
+        LineReader(char[] cs) {
+            this.cs = cs;
+        }
+
+        void readLine(TokenBuffer buf) {
+            int lineStart = this.pos;
+            int lineEnd = lineStart;
+            while (lineEnd < this.cs.length && this.cs[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            consume('[', lineStart, lineEnd);
+            int lineNo = readLineNo(lineStart, lineEnd);
+            consume(',', lineStart, lineEnd);
+            consume('"', lineStart, lineEnd);
+            int kindStart = this.pos;
+            while (this.pos < lineEnd && this.cs[this.pos] != '"') {
+                this.pos++;
+            }
+            Kind kind = Kind.of(new String(this.cs, kindStart, this.pos - kindStart));
+            consume('"', lineStart, lineEnd);
+            consume(',', lineStart, lineEnd);
+            consume('"', lineStart, lineEnd);
+
+            // like Json.parse, the string ends at the first double quote
+            int close = this.pos;
+            while (close < lineEnd && this.cs[close] != '"') {
+                close++;
+            }
+            int strStart = this.pos;
+            this.pos = close;
+            consume('"', lineStart, lineEnd);
+            consume(']', lineStart, lineEnd);
+            skipSpaces(lineEnd);
+            if (this.pos != lineEnd) {
+                throw invalidLine(lineStart, lineEnd);
+            }
+
+            buf.add(lineNo, kind, strStart, close);
+            this.pos = lineEnd;
+        }
+
+        private void skipSpaces(int lineEnd) {
+            while (this.pos < lineEnd && this.cs[this.pos] == ' ') {
+                this.pos++;
+            }
+        }
+
+        private void consume(char c, int lineStart, int lineEnd) {
+            skipSpaces(lineEnd);
+            if (this.pos >= lineEnd || this.cs[this.pos] != c) {
+                throw invalidLine(lineStart, lineEnd);
+            }
+            this.pos++;
+        }
+
+        private int readLineNo(int lineStart, int lineEnd) {
+            skipSpaces(lineEnd);
+            int n = 0;
+            int start = this.pos;
+            while (this.pos < lineEnd && '0' <= this.cs[this.pos] && this.cs[this.pos] <= '9') {
+                n = n * 10 + (this.cs[this.pos] - '0');
+                this.pos++;
+            }
+            if (this.pos == start) {
+                throw invalidLine(lineStart, lineEnd);
+            }
+            return n;
+        }
+
+        private RuntimeException invalidLine(int lineStart, int lineEnd) {
+            return unexpected("Invalid token line", new String(this.cs, lineStart, lineEnd - lineStart));
+        }
+
+    }
+
+    // --------------------------------
+
+    /**
+     * Reads the binary token format (see {@link Token#writeBinary}).
+     * Token strings are decoded one after another into a shared char array.
+     */
+    public static TokenBuffer readBinary(InputStream in) throws IOException {
+        TokenBuffer buf = new TokenBuffer(new char[4096]);
+        buf.srcLen = 0;
+
+        BinaryFeeder feeder = new BinaryFeeder(in);
+        while (feeder.feed(buf)) {
+            ;
+        }
+
+        return buf;
+    }
+
+    /**
+     * Same as {@link #readBinary(InputStream)}, but reads tokens lazily.
+     */
+    public static TokenBuffer streamBinary(InputStream in) {
+        TokenBuffer buf = new TokenBuffer(new char[4096]);
+        buf.srcLen = 0;
+        buf.feeder = new BinaryFeeder(in);
+        return buf;
+    }
+
+    private static class BinaryFeeder implements Feeder {
+
+        private final InputStream in;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private byte[] bytes = new byte[256];
+
+        BinaryFeeder(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean feed(TokenBuffer buf) throws IOException {
+            int lineNo = BinIO.readVarintOrEof(this.in);
+            if (lineNo < 0) {
+                return false;
+            }
+            Kind kind = Kind.ofOrdinal(BinIO.readByte(this.in));
+
+            int len = BinIO.readVarint(this.in);
+            if (this.bytes.length < len) {
+                this.bytes = new byte[Math.max(len, this.bytes.length * 2)];
+            }
+            if (this.in.readNBytes(this.bytes, 0, len) < len) {
+                throw new EOFException();
+            }
+
+            // a UTF-8 byte sequence never decodes to more chars than bytes
+            buf.ensureSrcCapacity(buf.srcLen + len);
+            CharBuffer out = CharBuffer.wrap(buf.src, buf.srcLen, buf.src.length - buf.srcLen);
+            this.decoder.reset();
+            this.decoder.decode(ByteBuffer.wrap(this.bytes, 0, len), out, true);
+            this.decoder.flush(out);
+
+            int start = buf.srcLen;
+            buf.srcLen = out.position();
+            buf.add(lineNo, kind, start, buf.srcLen);
+            return true;
+        }
+
+    }
+
+    private void ensureSrcCapacity(int capacity) {
+        if (this.src.length < capacity) {
+            this.src = Arrays.copyOf(this.src, Math.max(capacity, this.src.length * 2));
+        }
+    }
+
+}
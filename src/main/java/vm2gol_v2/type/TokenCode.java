@@ -0,0 +1,139 @@
+package vm2gol_v2.type;
+
+import java.util.Arrays;
+
+import vm2gol_v2.type.Token.Kind;
+
+/**
+ * Small integer codes for keywords and symbols.
+ * TokenBuffer assigns one to each token as it is added,
+ * so the parser compares ints instead of strings.
+ * All other tokens get NONE.
+ */
+public final class TokenCode {
+
+    public static final int NONE = 0;
+
+    // keywords
+    public static final int FUNC = 1;
+    public static final int SET = 2;
+    public static final int VAR = 3;
+    public static final int CALL_SET = 4;
+    public static final int CALL = 5;
+    public static final int RETURN = 6;
+    public static final int CASE = 7;
+    public static final int WHEN = 8;
+    public static final int WHILE = 9;
+    public static final int VM_CMT = 10;
+    public static final int VM_DEBUG = 11;
+
+    // symbols
+    public static final int PAREN_L = 12;
+    public static final int PAREN_R = 13;
+    public static final int BRACE_L = 14;
+    public static final int BRACE_R = 15;
+    public static final int SEMICOLON = 16;
+    public static final int COMMA = 17;
+    public static final int ASSIGN = 18;
+    public static final int PLUS = 19;
+    public static final int ASTERISK = 20;
+    public static final int EQ = 21;
+    public static final int NEQ = 22;
+
+    public static final int NUM_CODES = 23;
+
+    private static final Kind[] KINDS = new Kind[NUM_CODES];
+    private static final String[] STRS = new String[NUM_CODES];
+
+    /** codes of the keywords and symbols by their first char */
+    private static final int[][] BY_FIRST_CHAR = new int[128][];
+
+    private static void def(int code, Kind kind, String str) {
+        KINDS[code] = kind;
+        STRS[code] = str;
+
+        char c = str.charAt(0);
+        int[] codes = BY_FIRST_CHAR[c];
+        if (codes == null) {
+            codes = new int[0];
+        }
+        codes = Arrays.copyOf(codes, codes.length + 1);
+        codes[codes.length - 1] = code;
+        BY_FIRST_CHAR[c] = codes;
+    }
+
+    static {
+        def(FUNC    , Kind.KW, "func");
+        def(SET     , Kind.KW, "set");
+        def(VAR     , Kind.KW, "var");
+        def(CALL_SET, Kind.KW, "call_set");
+        def(CALL    , Kind.KW, "call");
+        def(RETURN  , Kind.KW, "return");
+        def(CASE    , Kind.KW, "case");
+        def(WHEN    , Kind.KW, "when");
+        def(WHILE   , Kind.KW, "while");
+        def(VM_CMT  , Kind.KW, "_cmt");
+        def(VM_DEBUG, Kind.KW, "_debug");
+
+        def(PAREN_L  , Kind.SYM, "(");
+        def(PAREN_R  , Kind.SYM, ")");
+        def(BRACE_L  , Kind.SYM, "{");
+        def(BRACE_R  , Kind.SYM, "}");
+        def(SEMICOLON, Kind.SYM, ";");
+        def(COMMA    , Kind.SYM, ",");
+        def(ASSIGN   , Kind.SYM, "=");
+        def(PLUS     , Kind.SYM, "+");
+        def(ASTERISK , Kind.SYM, "*");
+        def(EQ       , Kind.SYM, "==");
+        def(NEQ      , Kind.SYM, "!=");
+    }
+
+    private TokenCode() {}
+
+    public static Kind kind(int code) {
+        return KINDS[code];
+    }
+
+    public static String str(int code) {
+        return STRS[code];
+    }
+
+    /**
+     * @return code of the token cs[start, end), or NONE
+     */
+    public static int of(Kind kind, char[] cs, int start, int end) {
+        if (kind != Kind.KW && kind != Kind.SYM) {
+            return NONE;
+        }
+
+        int len = end - start;
+        if (len == 0 || BY_FIRST_CHAR.length <= cs[start]) {
+            return NONE;
+        }
+
+        // at most 3 candidates ("call_set", "call", "case")
+        int[] codes = BY_FIRST_CHAR[cs[start]];
+        if (codes == null) {
+            return NONE;
+        }
+        for (int code : codes) {
+            if (KINDS[code] != kind || STRS[code].length() != len) {
+                continue;
+            }
+            if (regionEq(STRS[code], cs, start)) {
+                return code;
+            }
+        }
+        return NONE;
+    }
+
+    private static boolean regionEq(String s, char[] cs, int start) {
+        for (int i = 0; i < s.length(); i++) {
+            if (cs[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,194 @@
+package vm2gol_v2.util;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+
+import static vm2gol_v2.util.Utils.invalidType;
+import static vm2gol_v2.util.Utils.unexpected;
+
+/**
+ * Binary form of the AST, an alternative to .vgt.json.
+ *
+ * <pre>
+ * file  = "VGTB" version node
+ * node  = LIST count node*
+ *       | INT zigzag-varint
+ *       | STR_DEF utf8     ... added to the string table
+ *       | STR_REF index    ... index into the string table
+ * </pre>
+ *
+ * Counts and indexes are varints. See {@link BinIO}.
+ */
+public class BinAst {
+
+    private static final byte[] MAGIC = {'V', 'G', 'T', 'B'};
+    private static final int VERSION = 1;
+
+    private static final int LIST = 0;
+    private static final int INT = 1;
+    private static final int STR_DEF = 2;
+    private static final int STR_REF = 3;
+
+    public static void write(OutputStream out, NodeList tree) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+
+        Map<String, Integer> strIds = new HashMap<>();
+        Deque<Iterator<NodeItem>> stack = new ArrayDeque<>();
+
+        writeListHead(out, tree, stack);
+        while (! stack.isEmpty()) {
+            Iterator<NodeItem> it = stack.peek();
+            if (! it.hasNext()) {
+                stack.pop();
+                continue;
+            }
+
+            NodeItem item = it.next();
+            switch (item.type) {
+            case LIST:
+                writeListHead(out, item.getItems(), stack);
+                break;
+            case INT:
+                out.write(INT);
+                BinIO.writeVarint(out, BinIO.zigzag(item.getIntVal()));
+                break;
+            case STR:
+                writeStr(out, item.getStrVal(), strIds);
+                break;
+            default:
+                throw invalidType(item);
+            }
+        }
+    }
+
+    private static void writeListHead(
+            OutputStream out, NodeList xs, Deque<Iterator<NodeItem>> stack
+    ) throws IOException {
+        out.write(LIST);
+        BinIO.writeVarint(out, xs.size());
+        stack.push(xs.getList().iterator());
+    }
+
+    private static void writeStr(
+            OutputStream out, String s, Map<String, Integer> strIds
+    ) throws IOException {
+        Integer id = strIds.get(s);
+        if (id != null) {
+            out.write(STR_REF);
+            BinIO.writeVarint(out, id);
+        } else {
+            strIds.put(s, strIds.size());
+            out.write(STR_DEF);
+            BinIO.writeUtf8(out, s);
+        }
+    }
+
+    // --------------------------------
+
+    public static NodeList read(ByteBuffer buf) {
+        for (byte b : MAGIC) {
+            if (buf.get() != b) {
+                throw unexpected("not a binary AST");
+            }
+        }
+        int version = buf.get();
+        if (version != VERSION) {
+            throw unexpected("unsupported version", version);
+        }
+
+        List<String> strs = new ArrayList<>();
+        Deque<NodeList> lists = new ArrayDeque<>();
+        Deque<Integer> rests = new ArrayDeque<>();
+
+        if (buf.get() != LIST) {
+            throw unexpected("root must be a list");
+        }
+        NodeList root = new NodeList();
+        lists.push(root);
+        rests.push(BinIO.readVarint(buf));
+
+        while (! lists.isEmpty()) {
+            int rest = rests.pop();
+            if (rest == 0) {
+                lists.pop();
+                continue;
+            }
+            rests.push(rest - 1);
+
+            NodeList xs = lists.peek();
+            int tag = buf.get();
+            switch (tag) {
+            case LIST:
+                NodeList child = new NodeList();
+                xs.add(child);
+                lists.push(child);
+                rests.push(BinIO.readVarint(buf));
+                break;
+            case INT:
+                xs.add(NodeItem.of(BinIO.unzigzag(BinIO.readVarint(buf))));
+                break;
+            case STR_DEF:
+                String s = BinIO.readUtf8(buf);
+                strs.add(s);
+                xs.add(NodeItem.of(s));
+                break;
+            case STR_REF:
+                xs.add(NodeItem.of(strs.get(BinIO.readVarint(buf))));
+                break;
+            default:
+                throw unexpected("invalid tag", tag);
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * Maps stdin when it is redirected from a regular file,
+     * otherwise reads it all.
+     */
+    public static NodeList readStdin() {
+        try {
+            FileChannel ch = new FileInputStream(FileDescriptor.in).getChannel();
+            ByteBuffer buf = mapRest(ch);
+            if (buf == null) {
+                buf = ByteBuffer.wrap(System.in.readAllBytes());
+            }
+            return read(buf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return null if the channel cannot be mapped (e.g. a pipe)
+     */
+    private static ByteBuffer mapRest(FileChannel ch) {
+        try {
+            long pos = ch.position();
+            long size = ch.size() - pos;
+            if (size <= 0) {
+                return null;
+            }
+            return ch.map(FileChannel.MapMode.READ_ONLY, pos, size);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package vm2gol_v2.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Primitives for the binary formats:
+ * unsigned LEB128 varints and length-prefixed UTF-8 strings,
+ * read from streams or from (possibly mapped) byte buffers.
+ */
+public class BinIO {
+
+    public static void writeVarint(OutputStream out, int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /**
+     * @return the value, or -1 if the stream is already at its end
+     */
+    public static int readVarintOrEof(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+        return readVarint(in, b);
+    }
+
+    public static int readVarint(InputStream in) throws IOException {
+        return readVarint(in, readByte(in));
+    }
+
+    private static int readVarint(InputStream in, int b) throws IOException {
+        int n = 0;
+        int shift = 0;
+        while ((b & 0x80) != 0) {
+            n |= (b & 0x7f) << shift;
+            shift += 7;
+            b = readByte(in);
+        }
+        return n | (b << shift);
+    }
+
+    public static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    // --------------------------------
+
+    /**
+     * Writes the chars as a varint byte length followed by UTF-8 bytes.
+     * Unpaired surrogates become '?' as with String.getBytes.
+     */
+    public static void writeUtf8(OutputStream out, char[] cs, int offset, int len) throws IOException {
+        int end = offset + len;
+
+        int byteLen = 0;
+        for (int i = offset; i < end; i++) {
+            char c = cs[i];
+            if (c < 0x80) {
+                byteLen += 1;
+            } else if (c < 0x800) {
+                byteLen += 2;
+            } else if (isSurrogatePair(cs, i, end)) {
+                byteLen += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                byteLen += 1;
+            } else {
+                byteLen += 3;
+            }
+        }
+        writeVarint(out, byteLen);
+
+        for (int i = offset; i < end; i++) {
+            char c = cs[i];
+            if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            } else if (isSurrogatePair(cs, i, end)) {
+                int cp = Character.toCodePoint(c, cs[i + 1]);
+                out.write(0xf0 | (cp >> 18));
+                out.write(0x80 | ((cp >> 12) & 0x3f));
+                out.write(0x80 | ((cp >> 6) & 0x3f));
+                out.write(0x80 | (cp & 0x3f));
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                out.write('?');
+            } else {
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static boolean isSurrogatePair(char[] cs, int i, int end) {
+        return Character.isHighSurrogate(cs[i])
+                && i + 1 < end
+                && Character.isLowSurrogate(cs[i + 1]);
+    }
+
+    public static void writeUtf8(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readUtf8(InputStream in) throws IOException {
+        int len = readVarint(in);
+        byte[] bytes = in.readNBytes(len);
+        if (bytes.length < len) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // --------------------------------
+
+    public static int readVarint(ByteBuffer buf) {
+        int n = 0;
+        int shift = 0;
+        int b;
+        while (((b = buf.get()) & 0x80) != 0) {
+            n |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        return n | (b << shift);
+    }
+
+    public static String readUtf8(ByteBuffer buf) {
+        int len = readVarint(buf);
+        if (buf.hasArray()) {
+            int pos = buf.position();
+            buf.position(pos + len);
+            return new String(buf.array(), buf.arrayOffset() + pos, len, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    public static int unzigzag(int z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+}
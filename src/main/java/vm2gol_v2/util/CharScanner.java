@@ -0,0 +1,59 @@
+package vm2gol_v2.util;
+
+/**
+ * Scans for the characters the lexer skips over in bulk:
+ * runs of spaces, the end of a line, and newlines.
+ */
+public interface CharScanner {
+
+    /**
+     * @return index of the first char in [pos, end) that is not a space, or end
+     */
+    int skipSpaces(char[] cs, int pos, int end);
+
+    /**
+     * @return index of the first line terminator in [pos, end), or end
+     * @see #isLineTerminator(char)
+     */
+    int lineEnd(char[] cs, int pos, int end);
+
+    /**
+     * @return number of '\n' in [pos, end)
+     */
+    int countLf(char[] cs, int pos, int end);
+
+    /**
+     * Line terminators recognized by java.util.regex
+     * (i.e. characters that <code>.</code> does not match).
+     */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r'
+                || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * The Vector API version if the jdk.incubator.vector module is enabled
+     * (<code>--add-modules jdk.incubator.vector</code>), otherwise the scalar one.
+     */
+    static CharScanner get() {
+        return Holder.INSTANCE;
+    }
+
+    class Holder {
+
+        private static final CharScanner INSTANCE = create();
+
+        private static CharScanner create() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                try {
+                    return new VectorCharScanner();
+                } catch (LinkageError e) {
+                    // fall through
+                }
+            }
+            return new ScalarCharScanner();
+        }
+
+    }
+
+}
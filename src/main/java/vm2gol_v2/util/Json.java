@@ -1,137 +1,91 @@
 package vm2gol_v2.util;
 
-import vm2gol_v2.type.NodeItem;
-import vm2gol_v2.type.NodeItem.Type;
-import vm2gol_v2.type.NodeList;
-import static vm2gol_v2.util.Utils.invalidType;
-import static vm2gol_v2.util.Utils.notYetImpl;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
-import org.apache.commons.lang3.StringUtils;
+import vm2gol_v2.type.NodeInterner;
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+import static vm2gol_v2.util.Utils.unexpected;
 
 public class Json {
 
-    private static final String LF = "\n";
-    private static final String DQ = "\"";
-
-    private static final String INDENT_SPACES = "  ";
-
     public static String toJson(NodeList tree) {
-        return listToJson(tree, 0);
-    }
-
-    static String listToJson(NodeList list, int lv) {
-        int nextLv = lv + 1;
-        String s = "";
-        s += "[" + LF;
-
-        int cnt = -1;
-        for (NodeItem item : list.getList()) {
-            cnt++;
-
-            if (item.type == Type.LIST) {
-                s += listToJson(item.getItems(), nextLv);
-            } else {
-                s += INDENT_SPACES;
-                s += toJson(item, nextLv);
-            }
-
-            if (cnt < list.size() - 1) {
-                s += "," + LF;
-            }
-        }
-
-        s += LF;
-        s += "]" + LF;
-
-        return indent(s, lv);
-    }
-
-    public static String toJson(NodeItem item, int lv) {
-        int nextLv = lv + 0;
-
-        if (item.type == Type.STR) {
-            return DQ + item.getStrVal() + DQ;
-        } else if (item.type == Type.INT) {
-            return String.valueOf(item.getIntVal());
-        } else if (item.type == Type.LIST) {
-            return listToJson(item.getItems(), nextLv);
-        } else {
-            throw invalidType(item);
-        }
+        StringBuilder sb = new StringBuilder();
+        new JsonWriter(sb).list(tree);
+        return sb.toString();
     }
 
-    private static String indent(String s, int lv) {
-        String[] lines = StringUtils.split(s, LF);
-        List<String> lines2 = new ArrayList<>();
-
-        String spaces = "";
-        if (lv >= 1) {
-            spaces = INDENT_SPACES;
-        }
-
-        for (String line : lines) {
-            lines2.add(
-                    spaces + line
-            );
-        }
-        return String.join(LF, lines2);
+    public static NodeList parse(String json) {
+        JsonReader r = new JsonReader(json);
+        r.next(); // START_LIST
+        return readList(r);
     }
 
-    static class ParseResult {
-        NodeList nodeList;
-        int size;
-
-        ParseResult(NodeList nodeList, int size) {
-            this.nodeList = nodeList;
-            this.size = size;
+    /**
+     * Builds the list whose START_LIST has just been read,
+     * consuming events up to its END_LIST.
+     */
+    public static NodeList readList(JsonReader r) {
+        Deque<NodeList> stack = new ArrayDeque<>();
+        stack.push(new NodeList());
+
+        while (true) {
+            switch (r.next()) {
+            case START_LIST:
+                stack.push(new NodeList());
+                break;
+            case END_LIST:
+                NodeList xs = stack.pop();
+                if (stack.isEmpty()) {
+                    return xs;
+                }
+                stack.peek().add(xs);
+                break;
+            case INT:
+                stack.peek().add(NodeItem.of(r.intVal()));
+                break;
+            case STR:
+                stack.peek().add(NodeItem.of(r.strVal()));
+                break;
+            default:
+                throw unexpected("must not happen");
+            }
         }
     }
 
-    public static NodeList parse(String json) {
-        return _parse(json).nodeList;
-    }
-
-    public static ParseResult _parse(String json) {
-        int pos = 1;
-        NodeList xs = new NodeList();
-
-        Regex re = new Regex();
-
-        while (pos <= json.length()) {
-            String rest = json.substring(pos);
-
-            if (rest.startsWith("[")) {
-                ParseResult pr = _parse(rest);
-                xs.add(pr.nodeList);
-                pos += pr.size;
-            } else if (rest.startsWith("]")) {
-                pos++;
+    /**
+     * Same as readList(JsonReader), but every item is shared through the interner
+     * as soon as it is complete.
+     */
+    public static NodeList readList(JsonReader r, NodeInterner interner) {
+        Deque<List<NodeItem>> stack = new ArrayDeque<>();
+        stack.push(new ArrayList<>());
+
+        while (true) {
+            switch (r.next()) {
+            case START_LIST:
+                stack.push(new ArrayList<>());
+                break;
+            case END_LIST:
+                NodeItem xs = interner.list(stack.pop());
+                if (stack.isEmpty()) {
+                    return xs.getItems();
+                }
+                stack.peek().add(xs);
+                break;
+            case INT:
+                stack.peek().add(interner.intVal(r.intVal()));
                 break;
-            } else if (
-                    rest.startsWith(" ") ||
-                    rest.startsWith(LF) ||
-                    rest.startsWith(",")
-                    )
-            {
-                pos++;
-            } else if (re.match("^(-?[0-9]+)", rest)) {
-                String str = re.group(1);
-                int n = Integer.valueOf(str);
-                xs.add(NodeItem.of(n));
-                pos += str.length();
-            } else if (re.match("^\"(.*?)\"", rest)) {
-                String str = re.group(1);
-                xs.add(NodeItem.of(str));
-                pos += str.length() + 2;
-            } else {
-                throw notYetImpl("must not happen");
+            case STR:
+                stack.peek().add(interner.str(r.strVal()));
+                break;
+            default:
+                throw unexpected("must not happen");
             }
         }
-
-        return new ParseResult(xs, pos);
     }
 
 }
@@ -0,0 +1,229 @@
+package vm2gol_v2.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static vm2gol_v2.util.Utils.notYetImpl;
+
+/**
+ * Pull parser for the JSON subset written by {@link JsonWriter}:
+ * lists, ints and strings without escapes.
+ * Walks the input once by index,
+ * either all in memory or through a buffer refilled from a Reader.
+ *
+ * <pre>
+ * JsonReader r = new JsonReader(json);
+ * while (r.next() != Event.END) { ... }
+ * </pre>
+ *
+ * Follows the old regex based parser:
+ * the first char is taken as the opening bracket of the top-level list
+ * and anything after its closing bracket is ignored.
+ */
+public class JsonReader {
+
+    public enum Event {
+        START_LIST, END_LIST, STR, INT,
+        /** after the top-level list has been closed */
+        END;
+    }
+
+    private static final int BUF_SIZE = 8192;
+
+    /**
+     * Source of further input, or null when everything is in the buffer.
+     */
+    private final Reader in;
+    private boolean eof = false;
+
+    private char[] cs;
+    private int end;
+    private int pos = 0;
+    private int depth = 0;
+    private boolean started = false;
+
+    private int valStart;
+    private int valEnd;
+
+    public JsonReader(CharSequence json) {
+        this.in = null;
+        this.end = json.length();
+        this.cs = new char[this.end];
+        json.toString().getChars(0, this.end, this.cs, 0);
+    }
+
+    /**
+     * Reads the given chars in place. The array must not be modified
+     * while the reader or anything built from it is in use.
+     */
+    public JsonReader(char[] json, int len) {
+        this.in = null;
+        this.end = len;
+        this.cs = json;
+    }
+
+    /**
+     * Reads from the given reader through a refillable buffer,
+     * so the whole input is never held at once.
+     */
+    public JsonReader(Reader in) {
+        this.in = in;
+        this.end = 0;
+        this.cs = new char[BUF_SIZE];
+    }
+
+    /**
+     * Moves the unread part to the head of the buffer
+     * and reads more after it.
+     * The buffer grows only when a single value does not fit.
+     *
+     * @return false at the end of input
+     */
+    private boolean fill() {
+        if (this.in == null || this.eof) {
+            return false;
+        }
+
+        int rest = this.end - this.pos;
+        if (rest == this.cs.length) {
+            this.cs = Arrays.copyOf(this.cs, this.cs.length * 2);
+        }
+        System.arraycopy(this.cs, this.pos, this.cs, 0, rest);
+        this.pos = 0;
+        this.end = rest;
+
+        try {
+            int n = this.in.read(this.cs, this.end, this.cs.length - this.end);
+            if (n < 0) {
+                this.eof = true;
+                return false;
+            }
+            this.end += n;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return true;
+    }
+
+    public Event next() {
+        if (! this.started) {
+            this.started = true;
+            if (this.pos < this.end || fill()) {
+                this.pos++;
+            } else {
+                this.pos = 1;
+            }
+            this.depth = 1;
+            return Event.START_LIST;
+        }
+        if (this.depth == 0) {
+            return Event.END;
+        }
+        if (this.pos > this.end) {
+            // empty input: the old parser returned an empty list
+            this.depth--;
+            return Event.END_LIST;
+        }
+
+        while (this.pos < this.end || fill()) {
+            char c = this.cs[this.pos];
+
+            switch (c) {
+            case '[':
+                this.pos++;
+                this.depth++;
+                return Event.START_LIST;
+            case ']':
+                this.pos++;
+                this.depth--;
+                return Event.END_LIST;
+            case ' ': case '\n': case ',':
+                this.pos++;
+                continue;
+            default:
+                return scalar();
+            }
+        }
+
+        throw notYetImpl("must not happen");
+    }
+
+    private Event scalar() {
+        long m = TokenMatcher.matchJson(this.cs, this.pos, this.end);
+        // the value may continue past the buffer
+        while (
+                (TokenMatcher.cls(m) == TokenMatcher.NONE || TokenMatcher.end(m) == this.end)
+                && fill()
+        ) {
+            m = TokenMatcher.matchJson(this.cs, this.pos, this.end);
+        }
+        int tail = TokenMatcher.end(m);
+
+        switch (TokenMatcher.cls(m)) {
+        case TokenMatcher.INT:
+            this.valStart = this.pos;
+            this.valEnd = tail;
+            this.pos = tail;
+            return Event.INT;
+        case TokenMatcher.JSON_STR:
+            this.valStart = this.pos + 1;
+            this.valEnd = tail - 1;
+            this.pos = tail;
+            return Event.STR;
+        default:
+            throw notYetImpl("must not happen");
+        }
+    }
+
+    /**
+     * Value of the last INT event.
+     * Same as Integer.valueOf() on the digits, including the overflow check.
+     */
+    public int intVal() {
+        return parseInt(this.cs, this.valStart, this.valEnd);
+    }
+
+    static int parseInt(char[] cs, int start, int end) {
+        int i = start;
+        boolean neg = (cs[i] == '-');
+        if (neg) {
+            i++;
+        }
+
+        // accumulate negatively so that Integer.MIN_VALUE fits
+        int limit = neg ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int n = 0;
+        for (; i < end; i++) {
+            int d = cs[i] - '0';
+            if (n < limit / 10 || n * 10 < limit + d) {
+                throw new NumberFormatException(
+                        "For input string: \"" + new String(cs, start, end - start) + "\""
+                );
+            }
+            n = n * 10 - d;
+        }
+
+        return neg ? n : -n;
+    }
+
+    /**
+     * Value of the last STR event.
+     */
+    public String strVal() {
+        return new String(this.cs, this.valStart, this.valEnd - this.valStart);
+    }
+
+    // --------------------------------
+    // For JsonTape. Offsets stay valid only without a Reader.
+
+    int valStart() {
+        return this.valStart;
+    }
+
+    int valEnd() {
+        return this.valEnd;
+    }
+
+}
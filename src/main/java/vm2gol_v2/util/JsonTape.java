@@ -0,0 +1,132 @@
+package vm2gol_v2.util;
+
+import java.util.Arrays;
+
+import vm2gol_v2.type.LazyNodeList;
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+
+import static vm2gol_v2.util.Utils.unexpected;
+
+/**
+ * Structure of a JSON text recorded in one pass, without decoding values.
+ *
+ * Node i takes three ints on the tape, in document order:
+ *
+ * <pre>
+ * LIST: type, index of the node after the list, number of children
+ * STR : type, start, end    ... offsets of the chars between the quotes
+ * INT : type, start, end
+ * </pre>
+ *
+ * The children of a list start at the node after it.
+ * Values are decoded from the source chars on request.
+ */
+public class JsonTape {
+
+    private static final NodeItem.Type[] TYPES = NodeItem.Type.values();
+
+    private final char[] cs;
+    private int[] tape;
+    private int size = 0;
+
+    private JsonTape(char[] cs, int len) {
+        this.cs = cs;
+        // about one node per 16 chars in JsonWriter output
+        this.tape = new int[3 * Math.max(16, len / 16)];
+    }
+
+    public static NodeList parse(String json) {
+        return parse(json.toCharArray());
+    }
+
+    /**
+     * The chars are referred to, not copied.
+     */
+    public static NodeList parse(char[] json) {
+        JsonReader r = new JsonReader(json, json.length);
+        JsonTape t = new JsonTape(json, json.length);
+        t.build(r);
+        return new LazyNodeList(t, 0);
+    }
+
+    private void build(JsonReader r) {
+        // open lists
+        int[] stack = new int[16];
+        int depth = 0;
+
+        while (true) {
+            JsonReader.Event ev = r.next();
+            if (ev == JsonReader.Event.END) {
+                return;
+            }
+            if (ev == JsonReader.Event.END_LIST) {
+                depth--;
+                this.tape[3 * stack[depth] + 1] = this.size;
+                continue;
+            }
+
+            if (0 < depth) {
+                this.tape[3 * stack[depth - 1] + 2]++;
+            }
+            switch (ev) {
+            case START_LIST:
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = this.size;
+                add(NodeItem.Type.LIST, 0, 0);
+                break;
+            case STR:
+                add(NodeItem.Type.STR, r.valStart(), r.valEnd());
+                break;
+            case INT:
+                add(NodeItem.Type.INT, r.valStart(), r.valEnd());
+                break;
+            default:
+                throw unexpected(ev);
+            }
+        }
+    }
+
+    private void add(NodeItem.Type type, int a, int b) {
+        if (this.tape.length < 3 * (this.size + 1)) {
+            this.tape = Arrays.copyOf(this.tape, this.tape.length * 2);
+        }
+        int i = 3 * this.size;
+        this.tape[i] = type.ordinal();
+        this.tape[i + 1] = a;
+        this.tape[i + 2] = b;
+        this.size++;
+    }
+
+    // --------------------------------
+
+    public NodeItem.Type type(int node) {
+        return TYPES[this.tape[3 * node]];
+    }
+
+    /**
+     * @return the node following the given one and all its descendants
+     */
+    public int next(int node) {
+        if (type(node) == NodeItem.Type.LIST) {
+            return this.tape[3 * node + 1];
+        }
+        return node + 1;
+    }
+
+    public int childCount(int node) {
+        return this.tape[3 * node + 2];
+    }
+
+    public String str(int node) {
+        int start = this.tape[3 * node + 1];
+        return new String(this.cs, start, this.tape[3 * node + 2] - start);
+    }
+
+    public int intVal(int node) {
+        return JsonReader.parseInt(this.cs, this.tape[3 * node + 1], this.tape[3 * node + 2]);
+    }
+
+}
@@ -0,0 +1,146 @@
+package vm2gol_v2.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+
+import static vm2gol_v2.util.Utils.invalidType;
+
+/**
+ * Writes the same text as {@link Json#toJson(NodeList)} straight to an Appendable.
+ * The indentation is derived from the nesting depth
+ * instead of re-indenting the nested output.
+ *
+ * <pre>
+ * [
+ *   "a",
+ *   [
+ *     1
+ *   ],
+ *   [
+ *   ]
+ * ]
+ * </pre>
+ *
+ * There is no newline after the last bracket.
+ */
+public class JsonWriter {
+
+    private static final String LF = "\n";
+    private static final String INDENT_SPACES = "  ";
+
+    private final Appendable out;
+
+    /** depth of the innermost open list; -1 at the top level */
+    private int depth = -1;
+    /** whether each open list already has an item */
+    private boolean[] hasItems = new boolean[16];
+
+    public JsonWriter(Appendable out) {
+        this.out = out;
+    }
+
+    public void startList() {
+        beginItem();
+        indent(this.depth + 1);
+        append("[");
+
+        this.depth++;
+        if (this.depth == this.hasItems.length) {
+            this.hasItems = Arrays.copyOf(this.hasItems, this.depth * 2);
+        }
+        this.hasItems[this.depth] = false;
+    }
+
+    public void endList() {
+        append(LF);
+        indent(this.depth);
+        append("]");
+        this.depth--;
+    }
+
+    public void str(String s) {
+        beginItem();
+        indent(this.depth + 1);
+        append("\"");
+        append(s);
+        append("\"");
+    }
+
+    public void intVal(int n) {
+        beginItem();
+        indent(this.depth + 1);
+        append(String.valueOf(n));
+    }
+
+    public void list(NodeList list) {
+        // iterators of the open lists, so that the depth is limited only by the heap
+        Deque<Iterator<NodeItem>> stack = new ArrayDeque<>();
+
+        startList();
+        stack.push(list.getList().iterator());
+
+        while (! stack.isEmpty()) {
+            Iterator<NodeItem> it = stack.peek();
+            if (! it.hasNext()) {
+                endList();
+                stack.pop();
+                continue;
+            }
+
+            NodeItem item = it.next();
+            if (item.type == NodeItem.Type.LIST) {
+                startList();
+                stack.push(item.getItems().getList().iterator());
+            } else {
+                scalar(item);
+            }
+        }
+    }
+
+    public void item(NodeItem item) {
+        if (item.type == NodeItem.Type.LIST) {
+            list(item.getItems());
+        } else {
+            scalar(item);
+        }
+    }
+
+    private void scalar(NodeItem item) {
+        switch (item.type) {
+        case STR : str(item.getStrVal())   ; break;
+        case INT : intVal(item.getIntVal()); break;
+        default:
+            throw invalidType(item);
+        }
+    }
+
+    private void beginItem() {
+        if (this.depth < 0) {
+            return;
+        }
+
+        append(this.hasItems[this.depth] ? "," + LF : LF);
+        this.hasItems[this.depth] = true;
+    }
+
+    private void indent(int lv) {
+        for (int i = 0; i < lv; i++) {
+            append(INDENT_SPACES);
+        }
+    }
+
+    private void append(String s) {
+        try {
+            this.out.append(s);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package vm2gol_v2.util;
+
+public class ScalarCharScanner implements CharScanner {
+
+    @Override
+    public int skipSpaces(char[] cs, int pos, int end) {
+        while (pos < end && cs[pos] == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    @Override
+    public int lineEnd(char[] cs, int pos, int end) {
+        while (pos < end && ! CharScanner.isLineTerminator(cs[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    @Override
+    public int countLf(char[] cs, int pos, int end) {
+        int n = 0;
+        for (int i = pos; i < end; i++) {
+            if (cs[i] == '\n') {
+                n++;
+            }
+        }
+        return n;
+    }
+
+}
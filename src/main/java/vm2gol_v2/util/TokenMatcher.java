@@ -0,0 +1,203 @@
+package vm2gol_v2.util;
+
+/**
+ * Table-driven DFA recognizing the token classes of the lexer
+ * and the scalar values of JSON in a single left-to-right pass.
+ * Reports the longest match and its class.
+ *
+ * <pre>
+ * lexer rules     JSON rules
+ *  SPACES   ( +)    JSON_INT (-?[0-9]+)
+ *  NEWLINE  \n      JSON_STR "(.*?)"
+ *  COMMENT  //.*
+ *  STR      "(.*)"
+ *  INT      -?[0-9]+
+ *  SYM      ==|!=|[(){}=;+*,]
+ *  IDENT    [a-z_][a-z0-9_]*
+ * </pre>
+ *
+ * As in java.util.regex, <code>.</code> matches anything but a line terminator.
+ * The result of a match is packed into a long; see {@link #cls(long)} and {@link #end(long)}.
+ */
+public class TokenMatcher {
+
+    // token classes
+    public static final int NONE = 0;
+    public static final int SPACES = 1;
+    public static final int NEWLINE = 2;
+    public static final int COMMENT = 3;
+    public static final int STR = 4;
+    public static final int INT = 5;
+    public static final int SYM = 6;
+    public static final int IDENT = 7;
+    public static final int JSON_STR = 8;
+
+    // char classes
+    private static final int C_OTHER = 0;
+    private static final int C_SPACE = 1;
+    private static final int C_LF = 2;
+    private static final int C_LT = 3; // other line terminators
+    private static final int C_SLASH = 4;
+    private static final int C_DQ = 5;
+    private static final int C_MINUS = 6;
+    private static final int C_DIGIT = 7;
+    private static final int C_ALPHA = 8; // [a-z_]
+    private static final int C_EQ = 9;
+    private static final int C_BANG = 10;
+    private static final int C_SYM = 11; // [(){};+*,]
+    private static final int NUM_CHAR_CLASSES = 12;
+
+    // states
+    private static final int DEAD = 0;
+    private static final int START_LEX = 1;
+    private static final int START_JSON = 2;
+    private static final int SPACES_ = 3;
+    private static final int LF_ = 4;
+    private static final int SLASH_ = 5;
+    private static final int COMMENT_ = 6;
+    private static final int STR_BODY = 7;
+    private static final int STR_CLOSE = 8;
+    private static final int MINUS_ = 9;
+    private static final int INT_ = 10;
+    private static final int EQ_ = 11;
+    private static final int BANG_ = 12;
+    private static final int SYM2 = 13;
+    private static final int SYM1 = 14;
+    private static final int IDENT_ = 15;
+    private static final int JSTR_BODY = 16;
+    private static final int JSTR_CLOSE = 17;
+    private static final int NUM_STATES = 18;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    private static final byte[][] NEXT = new byte[NUM_STATES][NUM_CHAR_CLASSES];
+    private static final byte[] ACCEPT = new byte[NUM_STATES];
+
+    static {
+        CHAR_CLASS[' '] = C_SPACE;
+        CHAR_CLASS['\n'] = C_LF;
+        CHAR_CLASS['\r'] = C_LT;
+        CHAR_CLASS['/'] = C_SLASH;
+        CHAR_CLASS['"'] = C_DQ;
+        CHAR_CLASS['-'] = C_MINUS;
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = C_DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = C_ALPHA;
+        }
+        CHAR_CLASS['_'] = C_ALPHA;
+        CHAR_CLASS['='] = C_EQ;
+        CHAR_CLASS['!'] = C_BANG;
+        for (char c : "(){};+*,".toCharArray()) {
+            CHAR_CLASS[c] = C_SYM;
+        }
+
+        on(START_LEX, C_SPACE, SPACES_);
+        on(SPACES_, C_SPACE, SPACES_);
+
+        on(START_LEX, C_LF, LF_);
+
+        on(START_LEX, C_SLASH, SLASH_);
+        on(SLASH_, C_SLASH, COMMENT_);
+        onAnyInLine(COMMENT_, COMMENT_);
+
+        on(START_LEX, C_DQ, STR_BODY);
+        onAnyInLine(STR_BODY, STR_BODY);
+        on(STR_BODY, C_DQ, STR_CLOSE);
+        onAnyInLine(STR_CLOSE, STR_BODY);
+        on(STR_CLOSE, C_DQ, STR_CLOSE);
+
+        on(START_LEX, C_MINUS, MINUS_);
+        on(START_LEX, C_DIGIT, INT_);
+        on(MINUS_, C_DIGIT, INT_);
+        on(INT_, C_DIGIT, INT_);
+
+        on(START_LEX, C_EQ, EQ_);
+        on(START_LEX, C_BANG, BANG_);
+        on(EQ_, C_EQ, SYM2);
+        on(BANG_, C_EQ, SYM2);
+        on(START_LEX, C_SYM, SYM1);
+
+        on(START_LEX, C_ALPHA, IDENT_);
+        on(IDENT_, C_ALPHA, IDENT_);
+        on(IDENT_, C_DIGIT, IDENT_);
+
+        on(START_JSON, C_MINUS, MINUS_);
+        on(START_JSON, C_DIGIT, INT_);
+        // non-greedy: the first double quote closes the string
+        on(START_JSON, C_DQ, JSTR_BODY);
+        onAnyInLine(JSTR_BODY, JSTR_BODY);
+        on(JSTR_BODY, C_DQ, JSTR_CLOSE);
+
+        ACCEPT[SPACES_] = SPACES;
+        ACCEPT[LF_] = NEWLINE;
+        ACCEPT[COMMENT_] = COMMENT;
+        ACCEPT[STR_CLOSE] = STR;
+        ACCEPT[INT_] = INT;
+        ACCEPT[EQ_] = SYM;
+        ACCEPT[SYM2] = SYM;
+        ACCEPT[SYM1] = SYM;
+        ACCEPT[IDENT_] = IDENT;
+        ACCEPT[JSTR_CLOSE] = JSON_STR;
+    }
+
+    private static void on(int state, int charClass, int next) {
+        NEXT[state][charClass] = (byte) next;
+    }
+
+    private static void onAnyInLine(int state, int next) {
+        for (int cc = 0; cc < NUM_CHAR_CLASSES; cc++) {
+            if (cc != C_LF && cc != C_LT) {
+                on(state, cc, next);
+            }
+        }
+    }
+
+    private static int charClass(char c) {
+        if (c < 128) {
+            return CHAR_CLASS[c];
+        }
+        return CharScanner.isLineTerminator(c) ? C_LT : C_OTHER;
+    }
+
+    private static long result(int cls, int end) {
+        return ((long) cls << 32) | end;
+    }
+
+    public static int cls(long result) {
+        return (int) (result >>> 32);
+    }
+
+    public static int end(long result) {
+        return (int) result;
+    }
+
+    // --------------------------------
+
+    public static long matchLex(char[] cs, int pos, int end) {
+        return match(cs, pos, end, START_LEX);
+    }
+
+    public static long matchJson(char[] cs, int pos, int end) {
+        return match(cs, pos, end, START_JSON);
+    }
+
+    private static long match(char[] cs, int pos, int end, int state) {
+        int acceptCls = NONE;
+        int acceptEnd = pos;
+
+        for (int i = pos; i < end; i++) {
+            state = NEXT[state][charClass(cs[i])];
+            if (state == DEAD) {
+                break;
+            }
+            if (ACCEPT[state] != NONE) {
+                acceptCls = ACCEPT[state];
+                acceptEnd = i + 1;
+            }
+        }
+
+        return result(acceptCls, acceptEnd);
+    }
+
+}
@@ -1,6 +1,11 @@
 package vm2gol_v2.util;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.lang3.StringUtils;
@@ -33,6 +38,28 @@ public class Utils {
         }
     }
 
+    public static char[] readStdinAllChars() {
+        try {
+            return IOUtils.toCharArray(stdinReader());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static Reader stdinReader() {
+        return new InputStreamReader(System.in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Buffered writer with the same encoding as System.out.
+     * Callers must flush it.
+     */
+    public static Writer stdoutWriter() {
+        return new BufferedWriter(
+                new OutputStreamWriter(System.out, System.out.charset())
+        );
+    }
+
     public static String escape(String s) {
         return s
                 .replace(BS, BS + BS)
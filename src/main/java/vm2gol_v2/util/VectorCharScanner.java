@@ -0,0 +1,58 @@
+package vm2gol_v2.util;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Compares a vector of chars at a time (chars are loaded as shorts).
+ * Only usable when the jdk.incubator.vector module is enabled;
+ * obtain it through {@link CharScanner#get()}.
+ */
+public class VectorCharScanner implements CharScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LEN = SPECIES.length();
+
+    private final ScalarCharScanner scalar = new ScalarCharScanner();
+
+    @Override
+    public int skipSpaces(char[] cs, int pos, int end) {
+        for (; pos <= end - LEN; pos += LEN) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, cs, pos);
+            VectorMask<Short> m = v.compare(VectorOperators.NE, (short) ' ');
+            if (m.anyTrue()) {
+                return pos + m.firstTrue();
+            }
+        }
+        return this.scalar.skipSpaces(cs, pos, end);
+    }
+
+    @Override
+    public int lineEnd(char[] cs, int pos, int end) {
+        for (; pos <= end - LEN; pos += LEN) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, cs, pos);
+            VectorMask<Short> m = v.eq((short) '\n')
+                    .or(v.eq((short) '\r'))
+                    .or(v.eq((short) '\u0085'))
+                    .or(v.eq((short) '\u2028'))
+                    .or(v.eq((short) '\u2029'));
+            if (m.anyTrue()) {
+                return pos + m.firstTrue();
+            }
+        }
+        return this.scalar.lineEnd(cs, pos, end);
+    }
+
+    @Override
+    public int countLf(char[] cs, int pos, int end) {
+        int n = 0;
+        for (; pos <= end - LEN; pos += LEN) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, cs, pos);
+            n += v.eq((short) '\n').trueCount();
+        }
+        return n + this.scalar.countLf(cs, pos, end);
+    }
+
+}
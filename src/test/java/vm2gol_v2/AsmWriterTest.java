@@ -0,0 +1,96 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.MissingFormatArgumentException;
+
+import org.junit.Test;
+
+public class AsmWriterTest {
+
+    @Test
+    public void lines() {
+        StringWriter out = new StringWriter();
+        AsmWriter asm = new AsmWriter(out);
+
+        asm.label("main");
+        asm.push("bp");
+        asm.mov("bp", "sp");
+        asm.add("sp", -1);
+        asm.mov("reg_a", -7);
+        asm.movToBp(-1, "reg_a");
+        asm.movFromBp("reg_a", 2);
+        asm.je("then", 3);
+        asm.jmp("end_eq", 3);
+        asm.label("then", 3);
+        asm.je("end_when", 4, 0);
+        asm.label("end_when", 4, 0);
+        asm.caseCondComment(4, 0, "[\"==\", \"x\", 1]");
+        asm.vmComment("call  f");
+        asm.line("");
+        asm.ret();
+
+        assertThat(out.toString(), is(""));
+        asm.flush();
+
+        String exp = String.join("\n",
+                "label main",
+                "  push bp",
+                "  mov bp sp",
+                "  add sp -1",
+                "  mov reg_a -7",
+                "  mov [bp:-1] reg_a",
+                "  mov reg_a [bp:2]",
+                "  je then_3",
+                "  jmp end_eq_3",
+                "label then_3",
+                "  je end_when_4_0",
+                "label end_when_4_0",
+                "  # 条件 4_0: [\"==\", \"x\", 1]",
+                "  _cmt call~~f",
+                "",
+                "  ret",
+                ""
+        );
+        assertThat(out.toString(), is(exp));
+    }
+
+    @Test
+    public void flushInChunks() {
+        StringWriter out = new StringWriter();
+        AsmWriter asm = new AsmWriter(out);
+
+        StringBuilder exp = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            asm.mov("reg_a", i);
+            exp.append("  mov reg_a ").append(i).append("\n");
+        }
+        assertThat(out.toString().isEmpty(), is(false));
+        assertThat(out.toString().length() < exp.length(), is(true));
+
+        asm.flush();
+        assertThat(out.toString(), is(exp.toString()));
+    }
+
+    @Test
+    public void vmCommentWithPercent() {
+        StringWriter out = new StringWriter();
+        AsmWriter asm = new AsmWriter(out);
+
+        // as a format string
+        asm.vmComment("100%% done");
+        asm.flush();
+        assertThat(out.toString(), is("  _cmt 100%~done\n"));
+
+        try {
+            asm.vmComment("5%d");
+            fail();
+        } catch (MissingFormatArgumentException e) {
+            // same as before
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package vm2gol_v2;
+
+import java.util.function.Supplier;
+
+import vm2gol_v2.type.FlatAst;
+import vm2gol_v2.type.NodeInterner;
+import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonReader;
+
+/**
+ * Retained heap per AST node of NodeList/NodeItem, FlatAst
+ * and a NodeList/NodeItem tree shared through a NodeInterner.
+ *
+ * <pre>
+ * ./bench.sh -h > /dev/null   # to build target/test-classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *   vm2gol_v2.AstMemory [src size in MB]
+ * </pre>
+ */
+public class AstMemory {
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+
+    private static long measure(Supplier<Object> build) {
+        long before = usedHeap();
+        Object tree = build.get();
+        long after = usedHeap();
+        // keep it reachable until measured
+        if (tree.hashCode() == 0) {
+            System.out.print("");
+        }
+        return after - before;
+    }
+
+    public static void main(String[] args) {
+        int sizeMb = (args.length == 0) ? 8 : Integer.parseInt(args[0]);
+        String json = JsonBenchmark.genJson(sizeMb * 1024 * 1024);
+        int nodes = FlatAst.fromJson(new JsonReader(json)).size();
+
+        long objs = measure(() -> Json.parse(json));
+        long flat = measure(() -> FlatAst.fromJson(new JsonReader(json)));
+        long interned = measure(() -> {
+            JsonReader r = new JsonReader(json);
+            r.next();
+            return Json.readList(r, new NodeInterner());
+        });
+
+        System.out.printf("nodes: %d%n", nodes);
+        System.out.printf("NodeList/NodeItem: %,d bytes (%.1f bytes/node)%n", objs, (double) objs / nodes);
+        System.out.printf("FlatAst          : %,d bytes (%.1f bytes/node)%n", flat, (double) flat / nodes);
+        System.out.printf("NodeInterner     : %,d bytes (%.1f bytes/node)%n", interned, (double) interned / nodes);
+    }
+
+}
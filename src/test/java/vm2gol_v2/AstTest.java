@@ -0,0 +1,62 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.util.Json;
+
+public class AstTest {
+
+    private static final String SRC = String.join("\n",
+            "func f(a, b) {",
+            "  var x;",
+            "  var y = (a + 1) * b;",
+            "  call_set x = g(y, 2);",
+            "  while (x != 0) { set x = x + -1; _debug(); }",
+            "  case when (x == 1) { call g(); _cmt(\"one\"); } when (1) { }",
+            "  return x;",
+            "}",
+            "func main() {",
+            "  call f(1, 2);",
+            "}"
+    );
+
+    @Test
+    public void jsonRoundTrip() {
+        String json = JsonBenchmark.genJson(64 * 1024);
+
+        Program program = Ast.toProgram(Json.parse(json));
+
+        assertThat(Json.toJson(Ast.toNodeList(program)), is(json));
+    }
+
+    @Test
+    public void allStatements() {
+        Program program = new Parser().parse(new Lexer().lexToBuffer(SRC));
+        String json = Json.toJson(Ast.toNodeList(program));
+
+        assertThat(Ast.toProgram(Json.parse(json)), is(program));
+    }
+
+    @Test
+    public void intParam() {
+        // accepted by the parser as before
+        Program program = new Parser().parse(new Lexer().lexToBuffer("func f(a, 1) {}"));
+        String json = Json.toJson(Ast.toNodeList(program));
+        assertThat(json, is(Json.toJson(Json.parse("[\"top_stmts\", [\"func\", \"f\", [\"a\", 1], []]]"))));
+
+        // and rejected by the code generator
+        try {
+            Ast.toProgram(Json.parse(json));
+            fail();
+        } catch (RuntimeException e) {
+            // invalid type
+        }
+    }
+
+}
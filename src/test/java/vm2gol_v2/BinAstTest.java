@@ -0,0 +1,48 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.BinAst;
+import vm2gol_v2.util.Json;
+
+public class BinAstTest {
+
+    private static byte[] toBytes(NodeList tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinAst.write(out, tree);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        String json = JsonBenchmark.genJson(64 * 1024);
+        byte[] bytes = toBytes(Json.parse(json));
+
+        NodeList tree = BinAst.read(ByteBuffer.wrap(bytes));
+
+        assertThat(Json.toJson(tree), is(json));
+        assertTrue(bytes.length * 4 < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void roundTripEdgeValues() throws IOException {
+        String json = Json.toJson(Json.parse(
+                "[\"top_stmts\", [], -2147483648, 2147483647, 0, -1, \"\", \"あ\", \"top_stmts\", [[[\"\"]]]]"
+        ));
+
+        NodeList tree = BinAst.read(ByteBuffer.wrap(toBytes(Json.parse(json))));
+
+        assertThat(Json.toJson(tree), is(json));
+    }
+
+}
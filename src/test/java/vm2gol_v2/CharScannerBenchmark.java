@@ -0,0 +1,78 @@
+package vm2gol_v2;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vm2gol_v2.type.Token;
+import vm2gol_v2.util.CharScanner;
+import vm2gol_v2.util.ScalarCharScanner;
+import vm2gol_v2.util.VectorCharScanner;
+
+/**
+ * <pre>
+ * ./bench.sh CharScannerBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class CharScannerBenchmark {
+
+    @Param({"scalar", "vector"})
+    String scanner;
+
+    private String src;
+    private char[] cs;
+    private Lexer lexer;
+    private CharScanner charScanner;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // indented code with long comments, where bulk skipping pays off
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < 4 * 1024 * 1024) {
+            sb.append("func f").append(i).append("(a) {\n");
+            sb.append("                // ---------------------------------------------\n");
+            sb.append("                // a long comment line that the lexer skips over\n");
+            sb.append("                // ---------------------------------------------\n");
+            sb.append("                return a;\n");
+            sb.append("}\n\n");
+            i++;
+        }
+        this.src = sb.toString();
+        this.cs = this.src.toCharArray();
+
+        this.charScanner = this.scanner.equals("vector")
+                ? new VectorCharScanner()
+                : new ScalarCharScanner();
+        this.lexer = new Lexer(this.charScanner);
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return this.lexer.lex(this.src);
+    }
+
+    @Benchmark
+    public int countLf() {
+        return this.charScanner.countLf(this.cs, 0, this.cs.length);
+    }
+
+}
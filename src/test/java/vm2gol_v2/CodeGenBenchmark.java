@@ -0,0 +1,110 @@
+package vm2gol_v2;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vm2gol_v2.type.Ast.Program;
+
+/**
+ * Code generation time and allocation per emitted line.
+ * The program is parsed in the setup and the output is discarded.
+ *
+ * <pre>
+ * ./bench.sh -prof gc CodeGenBenchmark
+ * </pre>
+ *
+ * gc.alloc.rate.norm is the number of bytes allocated per line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CodeGenBenchmark {
+
+    private static final int SRC_SIZE = 64 * 1024;
+
+    /** lines emitted for genSrc(SRC_SIZE); checked in the setup */
+    static final int LINES = 39_956;
+
+    private Program program;
+
+    /**
+     * Functions using every kind of statement and operator.
+     */
+    static String genSrc(int size) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append("func f").append(i).append("(a, b) {\n");
+            sb.append("  var x = (a + 1) * (b + 2) + a * b * 3;\n");
+            sb.append("  var y;\n");
+            sb.append("  while (x != ").append(i).append(") {\n");
+            sb.append("    set x = x + (y * 2) + -1;\n");
+            sb.append("    case\n");
+            sb.append("    when (x == a) { call_set y = g(x, b); }\n");
+            sb.append("    when (y == 0) { _cmt(\"y is zero\"); call set_vram(x, y); }\n");
+            sb.append("  }\n");
+            sb.append("  return x + y;\n");
+            sb.append("}\n\n");
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Counts the lines written to it.
+     */
+    static class LineCounter extends Writer {
+        long lines = 0;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (cbuf[i] == '\n') {
+                    this.lines++;
+                }
+            }
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String src = genSrc(SRC_SIZE);
+        this.program = new Parser().parse(new Lexer().lexToBuffer(src));
+
+        LineCounter counter = new LineCounter();
+        new CodeGenerator(counter).codegen(this.program);
+        if (counter.lines != LINES) {
+            throw new IllegalStateException("update LINES to " + counter.lines);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void codegen() {
+        new CodeGenerator(Writer.nullWriter()).codegen(this.program);
+    }
+
+}
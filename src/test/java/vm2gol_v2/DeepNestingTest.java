@@ -0,0 +1,107 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.Ast.BinOp;
+import vm2gol_v2.type.Ast.Expr;
+import vm2gol_v2.type.Ast.IntLit;
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.Json;
+
+public class DeepNestingTest {
+
+    @Test
+    public void compileDeepExpression() {
+        int depth = 1_000_000;
+        String src = "func main() {\n"
+                + "  var x = " + "(1 + ".repeat(depth) + "2" + ")".repeat(depth) + ";\n"
+                + "}\n";
+
+        Program program = new Parser().parse(new Lexer().lexToBuffer(src));
+
+        Expr expr = ((Var) program.funcs().get(0).stmts().get(0)).expr();
+        for (int i = 0; i < depth; i++) {
+            expr = ((BinOp) expr).rhs();
+        }
+        assertThat(expr, is(new IntLit(2)));
+
+        NodeItem tree = Ast.toNodeItem(((Var) program.funcs().get(0).stmts().get(0)).expr());
+        assertThat(Ast.toExpr(tree) instanceof BinOp, is(true));
+
+        CountingStream out = new CountingStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(out));
+        try {
+            new CodeGenerator().codegen(program);
+        } finally {
+            System.setOut(stdout);
+        }
+        // mov, push and add for each level
+        assertThat(out.lines > 5L * depth, is(true));
+    }
+
+    @Test
+    public void jsonOnSmallStack() throws Throwable {
+        int depth = 3_000;
+        NodeList root = new NodeList();
+        NodeList xs = root;
+        for (int i = 0; i < depth; i++) {
+            NodeList child = new NodeList();
+            xs.add(NodeItem.of(i)).add(child);
+            xs = child;
+        }
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread t = new Thread(null, () -> {
+            try {
+                String json = Json.toJson(root);
+                assertThat(Json.toJson(Json.parse(json)), is(json));
+
+                StringBuilder expected = new StringBuilder();
+                for (int i = 0; i < depth; i++) {
+                    expected.append("[").append(i).append(", ");
+                }
+                expected.append("[]").append("]".repeat(depth));
+                assertThat(NodeItem.of(root).inspect(), is(expected.toString()));
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        }, "small-stack", 128 * 1024);
+        t.start();
+        t.join();
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    private static class CountingStream extends OutputStream {
+        long lines = 0;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                this.lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.type.FlatAst;
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonReader;
+
+public class FlatAstTest {
+
+    @Test
+    public void sameAsNodeList() {
+        String json = JsonBenchmark.genJson(64 * 1024);
+        NodeList tree = Json.parse(json);
+
+        FlatAst copied = new FlatAst();
+        copied.add(NodeItem.of(tree));
+        assertThat(Json.toJson(copied.root()), is(json));
+
+        FlatAst read = FlatAst.fromJson(new JsonReader(new StringReader(json)));
+        assertThat(Json.toJson(read.root()), is(json));
+        assertThat(read.size(), is(copied.size()));
+    }
+
+    @Test
+    public void writtenFromAst() {
+        Program program = new Parser().parse(new Lexer().lexToBuffer(
+                ParserBenchmark.genSrc(64 * 1024)
+                + "func g() { case when (1) { _cmt(\"x\"); } when (0) { call f(1, 2); } }"
+        ));
+
+        FlatAst ast = new FlatAst();
+        int root = ast.addList();
+        ast.appendChild(root, ast.addStr("top_stmts"));
+        for (Func func : program.funcs()) {
+            ast.appendChild(root, Ast.writeTo(ast, func));
+        }
+        ast.compact();
+
+        assertThat(Json.toJson(ast.root()), is(Json.toJson(Ast.toNodeList(program))));
+    }
+
+    @Test
+    public void links() {
+        FlatAst ast = FlatAst.fromJson(new JsonReader("[\"a\", [1, -2], [], \"a\"]"));
+
+        NodeList root = ast.root();
+        assertThat(root.size(), is(4));
+        assertThat(root.get(1).getItems().getInt(1), is(-2));
+        assertThat(root.get(2).getItems().isEmpty(), is(true));
+        assertThat(root.rest().reverse().first().getStrVal(), is("a"));
+
+        int first = ast.firstChild(0);
+        assertThat(ast.nextSibling(ast.nextSibling(ast.nextSibling(first))), is(ast.size() - 1));
+        assertThat(ast.nextSibling(ast.size() - 1), is(-1));
+    }
+
+}
@@ -0,0 +1,88 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Stmt;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.Ast.VarRef;
+
+public class FrameLayoutTest {
+
+    private Func resolve(String src) {
+        Func func = new Parser().parse(new Lexer().lexToBuffer(src)).funcs().get(0);
+        return Resolver.resolve(func);
+    }
+
+    private int disp(FrameLayout layout, Stmt stmt) {
+        return layout.disp(((Var) stmt).dest());
+    }
+
+    @Test
+    public void shareDisjoint() {
+        Func func = resolve(String.join("\n",
+                "func f() {",
+                "  var a = 1;",     // 0
+                "  var b = a;",     // 1
+                "  var c = b;",     // 2: a is dead
+                "  var d = 2;",     // 3: b is dead
+                "  call g(c, d);",  // 4
+                "}"
+        ));
+        List<Stmt> stmts = func.stmts();
+        FrameLayout layout = FrameLayout.of(func);
+
+        assertThat(layout.size(), is(2));
+        assertThat(disp(layout, stmts.get(0)), is(-1));
+        assertThat(disp(layout, stmts.get(1)), is(-2));
+        assertThat(disp(layout, stmts.get(2)), is(-1));
+        assertThat(disp(layout, stmts.get(3)), is(-2));
+    }
+
+    @Test
+    public void liveAcrossLoop() {
+        Func func = resolve(String.join("\n",
+                "func f() {",
+                "  var a = 1;",
+                "  var i = 0;",
+                "  while (i != 3) { set i = i + a; }",
+                "  var b = 2;",
+                "  return b;",
+                "}"
+        ));
+        List<Stmt> stmts = func.stmts();
+        FrameLayout layout = FrameLayout.of(func);
+
+        assertThat(layout.size(), is(2));
+        assertThat(disp(layout, stmts.get(0)), is(-1));
+        assertThat(disp(layout, stmts.get(1)), is(-2));
+        assertThat(disp(layout, stmts.get(3)), is(-1));
+    }
+
+    @Test
+    public void duplicatedVar() {
+        Func func = resolve(String.join("\n",
+                "func f(x) {",
+                "  var a = x;",
+                "  var b = 1;",
+                "  var a;",
+                "  call_set a = g(b);",
+                "  var c = a;",
+                "}"
+        ));
+        List<Stmt> stmts = func.stmts();
+        FrameLayout layout = FrameLayout.of(func);
+
+        assertThat(layout.size(), is(2));
+        assertThat(disp(layout, stmts.get(2)), is(disp(layout, stmts.get(0))));
+        assertThat(disp(layout, stmts.get(4)), is(-2));
+        // arguments are not moved
+        assertThat(layout.disp((VarRef) ((Var) stmts.get(0)).expr()), is(2));
+    }
+
+}
@@ -0,0 +1,66 @@
+package vm2gol_v2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonTape;
+
+/**
+ * <pre>
+ * ./bench.sh JsonBenchmark
+ * ./bench.sh JsonBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    /** size of the source program; the .vgt.json is several times larger */
+    @Param({"1"})
+    int srcSizeMb;
+
+    private String json;
+    private char[] jsonChars;
+
+    static String genJson(int srcSize) {
+        String src = LexerBenchmark.genSrc(srcSize);
+        NodeList tree = Ast.toNodeList(new Parser().parse(new Lexer().lexToBuffer(src)));
+        return Json.toJson(tree);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.json = genJson(this.srcSizeMb * 1024 * 1024);
+        this.jsonChars = this.json.toCharArray();
+    }
+
+    @Benchmark
+    public NodeList parse() {
+        return Json.parse(this.json);
+    }
+
+    @Benchmark
+    public NodeList parseLazy() {
+        return JsonTape.parse(this.jsonChars);
+    }
+
+}
@@ -0,0 +1,82 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonReader;
+import vm2gol_v2.util.JsonTape;
+
+public class JsonTest {
+
+    @Test
+    public void roundTrip() {
+        String json = JsonBenchmark.genJson(64 * 1024);
+        assertThat(Json.toJson(Json.parse(json)), is(json));
+    }
+
+    @Test
+    public void sameAsRegexRules() {
+        NodeList xs = Json.parse("[ [\n\"a b\",-2147483648, [] ],2147483647\"c\"] ignored");
+
+        assertThat(xs.size(), is(3));
+        assertThat(xs.get(0).getItems().get(0).getStrVal(), is("a b"));
+        assertThat(xs.get(0).getItems().get(1).getIntVal(), is(Integer.MIN_VALUE));
+        assertThat(xs.get(0).getItems().get(2).getItems().size(), is(0));
+        assertThat(xs.get(1).getIntVal(), is(Integer.MAX_VALUE));
+        assertThat(xs.get(2).getStrVal(), is("c"));
+
+        assertThat(Json.parse("").size(), is(0));
+    }
+
+    @Test
+    public void readerSameAsString() {
+        String json = JsonBenchmark.genJson(64 * 1024);
+
+        // hands out a few chars per read to cross the buffer boundary everywhere
+        Reader in = new FilterReader(new StringReader(json)) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 3));
+            }
+        };
+        JsonReader r = new JsonReader(in);
+        r.next();
+
+        assertThat(Json.toJson(Json.readList(r)), is(json));
+        assertThat(r.next(), is(JsonReader.Event.END));
+    }
+
+    @Test
+    public void lazySameAsEager() {
+        String json = JsonBenchmark.genJson(64 * 1024);
+        NodeList lazy = JsonTape.parse(json);
+
+        assertThat(lazy.size(), is(Json.parse(json).size()));
+        assertThat(Json.toJson(lazy), is(json));
+
+        NodeList xs = JsonTape.parse("[ [\n\"a b\",-2147483648, [] ],2147483647\"c\"] ignored");
+        assertThat(xs.get(0).getItems().get(1).getIntVal(), is(Integer.MIN_VALUE));
+        assertThat(xs.get(2).getStrVal(), is("c"));
+        assertThat(JsonTape.parse("").size(), is(0));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void intOverflow() {
+        Json.parse("[2147483648]");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void unterminated() {
+        Json.parse("[1, [2]");
+    }
+
+}
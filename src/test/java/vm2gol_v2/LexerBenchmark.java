@@ -0,0 +1,87 @@
+package vm2gol_v2;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vm2gol_v2.type.Token;
+
+/**
+ * <pre>
+ * ./bench.sh LexerBenchmark
+ * ./bench.sh -p sizeMb=1,4,16 -p threads=1 LexerBenchmark.sequential
+ * </pre>
+ *
+ * The second one checks how sequential scales with the input size:
+ * quadratic growth would be around 16x per 4x of sizeMb.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+
+    @Param({"8"})
+    int sizeMb;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    private String src;
+    private ForkJoinPool pool;
+
+    static String genSrc(int size) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append("func f").append(i).append("(a, b) {\n");
+            sb.append("  var x = a; // counter\n");
+            sb.append("  while (x != ").append(i).append(") {\n");
+            sb.append("    set x = x + (b * 2);\n");
+            sb.append("    _cmt(\"loop body\");\n");
+            sb.append("  }\n");
+            sb.append("  return x;\n");
+            sb.append("}\n\n");
+            i++;
+        }
+        return sb.toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.src = genSrc(this.sizeMb * 1024 * 1024);
+        this.pool = new ForkJoinPool(this.threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Token> sequential() {
+        return new Lexer().lex(this.src);
+    }
+
+    @Benchmark
+    public List<Token> parallel() {
+        return new Lexer().lexParallel(this.src, this.pool);
+    }
+
+}
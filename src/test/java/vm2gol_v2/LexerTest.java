@@ -0,0 +1,208 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Token;
+import vm2gol_v2.util.CharScanner;
+import vm2gol_v2.util.ScalarCharScanner;
+import vm2gol_v2.util.VectorCharScanner;
+import vm2gol_v2.type.TokenBuffer;
+
+public class LexerTest {
+
+    private static final String SRC = String.join("\n",
+            "func main() {",
+            "  var a=-12; // comment \"x\"",
+            "  _cmt(\"a \"b\" c\"); call_set b_2 = f(a, 1);",
+            "",
+            "  while (a != 0) { set a = a + 1 * 2; }",
+            "  case when (a == 1) { _debug(); }",
+            "}"
+    );
+
+    private static List<String> lexToLines(String src) {
+        return new Lexer().lex(src).stream()
+                .map(Token::toLine)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void sameTokensAsRegexRules() {
+        List<String> lines = lexToLines(SRC);
+
+        assertThat(lines.get(0), is("[1, \"kw\", \"func\"]"));
+        assertThat(lines.get(5), is("[2, \"kw\", \"var\"]"));
+        assertThat(lines.get(8), is("[2, \"int\", \"-12\"]"));
+        assertThat(lines.get(12), is("[3, \"str\", \"a \"b\" c\"]"));
+        assertThat(lines.get(16), is("[3, \"ident\", \"b_2\"]"));
+        assertThat(lines.get(28), is("[5, \"sym\", \"!=\"]"));
+        assertThat(lines.get(lines.size() - 1), is("[7, \"sym\", \"}\"]"));
+        assertThat(lines.size(), is(56));
+    }
+
+    @Test
+    public void bufferSameAsList() {
+        TokenBuffer buf = new Lexer().lexToBuffer(SRC);
+        List<String> lines = lexToLines(SRC);
+
+        assertThat(buf.size(), is(lines.size()));
+        for (int i = 0; i < buf.size(); i++) {
+            assertThat(buf.get(i).toLine(), is(lines.get(i)));
+        }
+    }
+
+    @Test
+    public void streamSameAsFromLines() {
+        // fromLines rejects the string with double quotes
+        String src = repeatSrc(20).replace("a \"b\" c", "a b c");
+        String text = String.join("\n", lexToLines(src)) + "\n\n";
+        TokenBuffer exp = TokenBuffer.fromLines(text.toCharArray());
+        TokenBuffer act = TokenBuffer.streamLines(new StringReader(text));
+
+        int i = 0;
+        while (act.has(i)) {
+            assertThat(act.get(i).toLine(), is(exp.get(i).toLine()));
+            if (i % 7 == 0) {
+                act.discardBefore(i - 1);
+            }
+            i++;
+        }
+        assertThat(i, is(exp.size()));
+        assertThat(act.size(), is(exp.size()));
+    }
+
+    @Test
+    public void readerSameAsString() throws IOException {
+        // longer than the stream buffer, with one line that does not fit in it
+        String src = repeatSrc(200) + "\n  _cmt(\"" + "x".repeat(20000) + "\");\n" + repeatSrc(10);
+
+        List<String> act = new ArrayList<>();
+        new Lexer().lex(new StringReader(src), (lineNo, kind, cs, start, end) ->
+                act.add(new Token(lineNo, kind, new String(cs, start, end - start)).toLine())
+        );
+        assertThat(act, is(lexToLines(src)));
+    }
+
+    @Test
+    public void strEndsAtFirstQuote() {
+        TokenBuffer buf = TokenBuffer.fromLines("[1, \"str\", \"a]b, c\" ]\n".toCharArray());
+        assertThat(buf.str(0), is("a]b, c"));
+
+        // same as Json.parse before the TokenBuffer:
+        // a string with double quotes, as lexed from SRC, is an error
+        for (String line : new String[] { lexToLines(SRC).get(12), "[1, \"str\", \"a\"] x" }) {
+            try {
+                TokenBuffer.fromLines((line + "\n").toCharArray());
+                fail(line);
+            } catch (RuntimeException e) {
+                // invalid token line
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void discarded() {
+        TokenBuffer buf = TokenBuffer.streamLines(new StringReader(String.join("\n", lexToLines(SRC))));
+        buf.kind(10);
+        buf.discardBefore(10);
+        buf.kind(10);
+
+        buf.kind(9);
+    }
+
+    private static void assertRelex(String oldText, int editStart, int editOldEnd, String replacement) {
+        String newText =
+                oldText.substring(0, editStart)
+                + replacement
+                + oldText.substring(editOldEnd);
+
+        Lexer lexer = new Lexer();
+        List<Token> prevTokens = lexer.lex(oldText);
+        List<Token> tokens = lexer.relex(
+                prevTokens, oldText, newText,
+                editStart, editOldEnd, editStart + replacement.length()
+        );
+
+        List<String> act = tokens.stream().map(Token::toLine).collect(Collectors.toList());
+        assertThat(act, is(lexToLines(newText)));
+    }
+
+    @Test
+    public void relexSameAsFullLex() {
+        int line2 = SRC.indexOf("\n") + 1;
+        int line3 = SRC.indexOf("\n", line2) + 1;
+        int line5 = SRC.indexOf("while");
+
+        // edit within a line
+        assertRelex(SRC, line2 + 6, line2 + 7, "bb");
+        // insert lines
+        assertRelex(SRC, line3, line3, "  var c;\n  // new\n");
+        // delete lines
+        assertRelex(SRC, line2, line5, "");
+        // join lines
+        assertRelex(SRC, line3 - 1, line3, " ");
+        // edit at the end
+        assertRelex(SRC, SRC.length() - 1, SRC.length(), "}\nfunc f() {}");
+        // edit at the beginning
+        assertRelex(SRC, 0, 4, "// func");
+    }
+
+    private static String repeatSrc(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(SRC).append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void parallelSameAsSequential() {
+        String src = repeatSrc(3_000);
+        Lexer lexer = new Lexer();
+
+        List<String> exp = lexer.lex(src).stream().map(Token::toLine).collect(Collectors.toList());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<String> act = lexer.lexParallel(src, pool).stream()
+                    .map(Token::toLine)
+                    .collect(Collectors.toList());
+            assertThat(act, is(exp));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void vectorScannerSameAsScalar() {
+        CharScanner scalar = new ScalarCharScanner();
+        CharScanner vector = new VectorCharScanner();
+
+        String src = repeatSrc(50);
+        List<String> exp = new Lexer(scalar).lex(src).stream().map(Token::toLine).collect(Collectors.toList());
+        List<String> act = new Lexer(vector).lex(src).stream().map(Token::toLine).collect(Collectors.toList());
+        assertThat(act, is(exp));
+
+        char[] cs = (src + "   \r  //\u2028 x  \u2029 \u0085").toCharArray();
+        for (int pos = 0; pos < cs.length; pos += 7) {
+            for (int end : new int[] { pos, pos + 5, pos + 40, cs.length }) {
+                end = Math.min(end, cs.length);
+                assertThat(vector.skipSpaces(cs, pos, end), is(scalar.skipSpaces(cs, pos, end)));
+                assertThat(vector.lineEnd(cs, pos, end), is(scalar.lineEnd(cs, pos, end)));
+                assertThat(vector.countLf(cs, pos, end), is(scalar.countLf(cs, pos, end)));
+            }
+        }
+    }
+
+}
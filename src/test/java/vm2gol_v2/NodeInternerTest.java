@@ -0,0 +1,70 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast;
+import vm2gol_v2.type.NodeInterner;
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.Json;
+import vm2gol_v2.util.JsonReader;
+
+public class NodeInternerTest {
+
+    @Test
+    public void sharesEqualSubtrees() {
+        NodeInterner interner = new NodeInterner();
+        NodeList tree = interner.intern(Json.parse(
+                "[[\"==\", \"x\", 0], [\"set\", \"x\", 1], [\"==\", \"x\", 0], [\"==\", \"x\", 1], []]"
+        ));
+
+        assertThat(tree.get(0), sameInstance(tree.get(2)));
+        assertThat(tree.get(0), not(sameInstance(tree.get(3))));
+        assertThat(tree.get(0).getItems().get(1), sameInstance(tree.get(1).getItems().get(1)));
+
+        NodeItem again = interner.intern(NodeItem.of(Json.parse("[\"==\", \"x\", 0]")));
+        assertThat(again, sameInstance(tree.get(0)));
+    }
+
+    @Test
+    public void sameJson() {
+        String json = JsonBenchmark.genJson(64 * 1024);
+
+        NodeInterner interner = new NodeInterner();
+        assertThat(Json.toJson(interner.intern(Json.parse(json))), is(json));
+
+        JsonReader r = new JsonReader(json);
+        r.next();
+        NodeInterner interner2 = new NodeInterner();
+        assertThat(Json.toJson(Json.readList(r, interner2)), is(json));
+        assertThat(interner2.size(), is(interner.size()));
+        assertThat(interner.size() * 2L < interner.lookups(), is(true));
+    }
+
+    @Test
+    public void internsFuncWhileWriting() {
+        Ast.Program program = Ast.toProgram(Json.parse(
+                "[\"top_stmts\", [\"func\", \"f\", [\"x\"], [[\"set\", \"x\", 1], [\"set\", \"x\", 1]]]]"
+        ));
+        Ast.Func func = program.funcs().get(0);
+
+        NodeInterner interner = new NodeInterner();
+        NodeItem tree = Ast.intern(interner, func);
+        assertThat(Json.toJson(tree.getItems()), is(Json.toJson(Ast.toNodeList(func))));
+
+        NodeList stmts = tree.getItems().get(3).getItems();
+        assertThat(stmts.get(0), sameInstance(stmts.get(1)));
+        assertThat(interner.intern(NodeItem.of(Ast.toNodeList(func))), sameInstance(tree));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sharedListsAreImmutable() {
+        new NodeInterner().intern(Json.parse("[1]")).add("x");
+    }
+
+}
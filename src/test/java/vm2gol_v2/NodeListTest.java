@@ -0,0 +1,53 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.NodeItem;
+import vm2gol_v2.type.NodeList;
+import vm2gol_v2.util.JsonTape;
+
+public class NodeListTest {
+
+    private static List<String> strs(NodeList xs) {
+        List<String> list = new ArrayList<>();
+        for (NodeItem x : xs.getList()) {
+            list.add(x.getStrVal());
+        }
+        for (int i = 0; i < xs.size(); i++) {
+            assertThat(xs.getStr(i), is(list.get(i)));
+        }
+        return list;
+    }
+
+    @Test
+    public void views() {
+        NodeList xs = new NodeList().add("a").add("b").add("c").add("d");
+
+        assertThat(strs(xs.rest()), is(List.of("b", "c", "d")));
+        assertThat(strs(xs.reverse()), is(List.of("d", "c", "b", "a")));
+        assertThat(strs(xs.rest().reverse()), is(List.of("d", "c", "b")));
+        assertThat(strs(xs.reverse().rest()), is(List.of("c", "b", "a")));
+        assertThat(strs(xs.rest().rest().reverse().rest()), is(List.of("c")));
+        assertThat(xs.rest().rest().rest().rest().isEmpty(), is(true));
+        assertThat(xs.reverse().first().getStrVal(), is("d"));
+
+        assertThat(strs(JsonTape.parse("[\"a\", \"b\", \"c\"]").rest().reverse()), is(List.of("c", "b")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsAreReadOnly() {
+        new NodeList().add("a").add("b").rest().add("c");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexOutOfView() {
+        new NodeList().add("a").add("b").rest().get(1);
+    }
+
+}
@@ -0,0 +1,87 @@
+package vm2gol_v2;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.type.TokenBuffer;
+
+/**
+ * Parse time of an expression-heavy program, from lexed tokens.
+ *
+ * <pre>
+ * ./bench.sh ParserBenchmark
+ * ./bench.sh -p threads=8,16,32 ParserBenchmark.parallel
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"4"})
+    int sizeMb;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    private TokenBuffer tokens;
+    private ForkJoinPool pool;
+
+    static String genSrc(int size) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append("func f").append(i).append("(a, b) {\n");
+            sb.append("  var x = (a + 1) * (b + 2) + a * b * 3 + (a + (b * (a + 4)));\n");
+            sb.append("  var y = x * x + (x + a) * (x + b) + -7;\n");
+            sb.append("  while ((x + y) != (a * b + ").append(i).append(")) {\n");
+            sb.append("    set x = x + (y * 2) + (a + b) * (a + 1) * (b + 1);\n");
+            sb.append("    set y = ((((y + 1) * 2) + 3) * 4) == x;\n");
+            sb.append("  }\n");
+            sb.append("  return (x + y) * (a + b) + 1;\n");
+            sb.append("}\n\n");
+            i++;
+        }
+        return sb.toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.tokens = new Lexer().lexToBuffer(genSrc(this.sizeMb * 1024 * 1024));
+        this.pool = new ForkJoinPool(this.threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public Program parse() {
+        return new Parser().parse(this.tokens);
+    }
+
+    @Benchmark
+    public Program parallel() {
+        return new Parser().parseParallel(this.tokens, this.pool);
+    }
+
+}
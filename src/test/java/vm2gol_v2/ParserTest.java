@@ -0,0 +1,106 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast.Program;
+import vm2gol_v2.type.Token;
+import vm2gol_v2.type.TokenBuffer;
+
+public class ParserTest {
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setup() {
+        this.pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    private TokenBuffer lex(String src) {
+        return new Lexer().lexToBuffer(src);
+    }
+
+    private String errorMessage(Runnable parse) {
+        try {
+            parse.run();
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+        fail();
+        return null;
+    }
+
+    @Test
+    public void parallelSameAsSequential() {
+        String src = ParserBenchmark.genSrc(512 * 1024);
+
+        Program exp = new Parser().parse(lex(src));
+        Program act = new Parser().parseParallel(lex(src), this.pool);
+
+        assertThat(act.funcs().size(), is(exp.funcs().size()));
+        assertThat(act, is(exp));
+
+        assertThat(new Parser().parseParallel(lex(""), this.pool).funcs().size(), is(0));
+    }
+
+    @Test
+    public void parallelSameError() {
+        String src = ParserBenchmark.genSrc(256 * 1024);
+        int mid = src.indexOf("func", src.length() / 2);
+
+        String[] brokenSrcs = {
+                // syntax error in a function in the middle
+                src.substring(0, mid) + "func g() { set x = ; }\n" + src.substring(mid),
+                // unbalanced braces
+                src.substring(0, mid) + "func g() { }}\n" + src.substring(mid),
+                src.substring(0, mid) + "func g() { while (1) { }\n" + src.substring(mid),
+        };
+
+        for (String brokenSrc : brokenSrcs) {
+            String exp = errorMessage(() -> new Parser().parse(lex(brokenSrc)));
+            String act = errorMessage(() -> new Parser().parseParallel(lex(brokenSrc), this.pool));
+            assertThat(act, is(exp));
+        }
+    }
+
+    @Test
+    public void streamLongFunction() throws IOException {
+        // more tokens than the initial capacity of a TokenBuffer
+        String src = "func main() {\n"
+                + "  var x = 0;\n".repeat(100)
+                + "}\n";
+        TokenBuffer buf = lex(src);
+        assertThat(buf.size() > 256, is(true));
+        Program exp = new Parser().parse(buf);
+
+        StringBuilder lines = new StringBuilder();
+        ByteArrayOutputStream bin = new ByteArrayOutputStream();
+        for (int i = 0; i < buf.size(); i++) {
+            lines.append(buf.get(i).toLine()).append("\n");
+            char[] cs = buf.str(i).toCharArray();
+            Token.writeBinary(bin, buf.lineNo(i), buf.kind(i), cs, 0, cs.length);
+        }
+
+        TokenBuffer fromLines = TokenBuffer.streamLines(new StringReader(lines.toString()));
+        assertThat(new Parser().parse(fromLines), is(exp));
+        TokenBuffer fromBinary = TokenBuffer.streamBinary(new ByteArrayInputStream(bin.toByteArray()));
+        assertThat(new Parser().parse(fromBinary), is(exp));
+    }
+
+}
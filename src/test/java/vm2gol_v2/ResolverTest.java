@@ -0,0 +1,97 @@
+package vm2gol_v2;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import vm2gol_v2.type.Ast.BinOp;
+import vm2gol_v2.type.Ast.CallSet;
+import vm2gol_v2.type.Ast.Func;
+import vm2gol_v2.type.Ast.Return;
+import vm2gol_v2.type.Ast.Set;
+import vm2gol_v2.type.Ast.Stmt;
+import vm2gol_v2.type.Ast.Var;
+import vm2gol_v2.type.Ast.VarRef;
+
+public class ResolverTest {
+
+    private Func resolve(String src) {
+        Func func = new Parser().parse(new Lexer().lexToBuffer(src)).funcs().get(0);
+        return Resolver.resolve(func);
+    }
+
+    private int disp(Stmt stmt) {
+        return switch (stmt) {
+        case Var var         -> ((VarRef) var.expr()).disp();
+        case Set set         -> ((VarRef) set.expr()).disp();
+        case Return ret      -> ((VarRef) ret.expr()).disp();
+        default -> throw new IllegalArgumentException(stmt.toString());
+        };
+    }
+
+    @Test
+    public void slots() {
+        List<Stmt> stmts = resolve(String.join("\n",
+                "func f(a, b, a) {",
+                "  var x = b;",
+                "  var y = a;",
+                "  var x;",
+                "  set y = x;",
+                "  var b = b;",
+                "  return b;",
+                "}"
+        )).stmts();
+
+        assertThat(((Var) stmts.get(0)).dest().disp(), is(-1));
+        assertThat(disp(stmts.get(0)), is(3));
+        assertThat(disp(stmts.get(1)), is(2));
+        // duplicated local keeps its first slot
+        assertThat(((Var) stmts.get(2)).dest().disp(), is(-1));
+        assertThat(((Set) stmts.get(3)).dest().disp(), is(-2));
+        assertThat(disp(stmts.get(3)), is(-1));
+        // a local is visible in its own initializer
+        assertThat(disp(stmts.get(4)), is(-4));
+        assertThat(disp(stmts.get(5)), is(-4));
+    }
+
+    @Test
+    public void notVisible() {
+        List<Stmt> stmts = resolve(String.join("\n",
+                "func f(a) {",
+                "  set a = a;",
+                "  call_set a = g();",
+                "  call_set z = g();",
+                "  return a;",
+                "}"
+        )).stmts();
+
+        assertThat(((Set) stmts.get(0)).dest().isResolved(), is(false));
+        assertThat(disp(stmts.get(0)), is(2));
+        assertThat(((CallSet) stmts.get(1)).dest().disp(), is(0));
+        assertThat(((CallSet) stmts.get(2)).dest().disp(), is(0));
+        // arguments are not visible in a return expression
+        assertThat(((VarRef) ((Return) stmts.get(3)).expr()).isResolved(), is(false));
+    }
+
+    @Test
+    public void manyLocals() {
+        int n = 20000;
+        StringBuilder sb = new StringBuilder("func f() {\n");
+        for (int i = 0; i < n; i++) {
+            sb.append("  var v" + i + " = v" + (i / 2) + " + 1;\n");
+        }
+        sb.append("}\n");
+
+        List<Stmt> stmts = resolve(sb.toString()).stmts();
+
+        for (int i = 0; i < n; i++) {
+            Var var = (Var) stmts.get(i);
+            assertThat(var.dest().disp(), is(-(i + 1)));
+            assertThat(((VarRef) ((BinOp) var.expr()).lhs()).disp(), is(-(i / 2 + 1)));
+        }
+    }
+
+}